@@ -1,5 +1,6 @@
 package com.notia;
 
+import dev.langchain4j.model.chat.response.StreamingHandle;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
@@ -17,10 +18,11 @@ import javafx.stage.Stage;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
-import shared.Assistant;
+import shared.StreamingAssistant;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class App extends Application {
 
@@ -35,7 +37,13 @@ public class App extends Application {
     private ListView<Note> noteList;
     private ListView<Category> categoryList;
     private ListView<Tag> tagList;
+    private PagedNoteList pagedNotes;
     private ObservableList<Note> notes;
+    private final NoteChangeListener noteChangeListener = this::onNoteChanged;
+    // One in-flight request per kind; a newer selection/search cancels the stale one
+    private final AsyncDatabase.LatestRequest noteLoadRequest = new AsyncDatabase.LatestRequest();
+    private final AsyncDatabase.LatestRequest noteQueryRequest = new AsyncDatabase.LatestRequest();
+    private boolean saveInProgress = false;
     private ObservableList<Category> categories;
     private ObservableList<Tag> tags;
     private Note currentNote;
@@ -51,12 +59,22 @@ public class App extends Application {
     private TextField chatInputField;
     private Button chatSendButton;
     private boolean chatSidebarVisible = false;
-    private Assistant chatAssistant;
+    private StreamingAssistant chatAssistant;
+    // Completes once Clear Chat has forgotten the conversation; the next question waits for it
+    private volatile CompletableFuture<Void> chatSessionCleared = CompletableFuture.completedFuture(null);
+    // The response currently streaming into the sidebar, or null
+    private ActiveChat activeChat;
     private ProgressIndicator chatLoadingIndicator;
     private Label loadingTextLabel;
 
     private ViewState currentView = ViewState.PREVIEW;
 
+    private static final int NOTE_PAGE_SIZE = 100;
+    // How often tokens streaming in are moved into the chat bubble
+    private static final int CHAT_FLUSH_INTERVAL_MS = 40;
+    // Conversation id of the sidebar chat; it starts empty on every launch, as the sidebar does
+    private static final String CHAT_SESSION_ID = "sidebar";
+
     private Parser parser = Parser.builder().build();
     private HtmlRenderer renderer = HtmlRenderer.builder().build();
 
@@ -79,33 +97,58 @@ public class App extends Application {
         splitPane = new SplitPane(markdownEditor, htmlViewer);
         searchField = new TextField();
 
-        notes = FXCollections.observableArrayList(Database.getAllNotes());
+        pagedNotes = new PagedNoteList(NOTE_PAGE_SIZE, Database.NoteOrder.ID);
+        notes = pagedNotes.getItems();
         noteList.setItems(notes);
+        // Fetch the next page when cells near the end of the loaded notes become visible
+        noteList.setCellFactory(list -> new ListCell<Note>() {
+            @Override
+            protected void updateItem(Note note, boolean empty) {
+                super.updateItem(note, empty);
+                setText(empty || note == null ? null : note.toString());
+                if (!empty) {
+                    int index = getIndex();
+                    Platform.runLater(() -> pagedNotes.ensureLoaded(index));
+                }
+            }
+        });
+        pagedNotes.showAll();
+        Database.addNoteChangeListener(noteChangeListener);
 
-        categories = FXCollections.observableArrayList(Database.getAllCategories());
+        categories = FXCollections.observableArrayList();
         categoryList.setItems(categories);
+        refreshCategories();
 
-        tags = FXCollections.observableArrayList(Database.getAllTags());
+        tags = FXCollections.observableArrayList();
         tagList.setItems(tags);
+        refreshTags();
 
         // Initialize chat assistant in background
         initializeChatAssistant();
 
         noteList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue != null) {
+            // Selecting the note we just saved shouldn't reload it
+            if (newValue != null && (currentNote == null || currentNote.getId() != newValue.getId())) {
                 loadNoteContent(newValue);
             }
         });
 
+        // The chat answers from the notes of the selected category or tag
         categoryList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
-                notes.setAll(Database.getNotesByCategory(newValue.getId()));
+                noteQueryRequest.submit(AsyncDatabase.getNotesByCategory(newValue.getId()), pagedNotes::showResults);
+                ChatAssistantFactory.setRetrievalScope(VectorDB.categoryFilter(newValue.getName()));
+            } else if (tagList.getSelectionModel().getSelectedItem() == null) {
+                ChatAssistantFactory.setRetrievalScope(null);
             }
         });
 
         tagList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
-                notes.setAll(Database.getNotesByTag(newValue.getId()));
+                noteQueryRequest.submit(AsyncDatabase.getNotesByTag(newValue.getId()), pagedNotes::showResults);
+                ChatAssistantFactory.setRetrievalScope(VectorDB.tagFilter(newValue.getName()));
+            } else if (categoryList.getSelectionModel().getSelectedItem() == null) {
+                ChatAssistantFactory.setRetrievalScope(null);
             }
         });
 
@@ -196,6 +239,22 @@ public class App extends Application {
         updateView();
     }
 
+    @Override
+    public void stop() {
+        Database.removeNoteChangeListener(noteChangeListener);
+        AsyncDatabase.shutdown();
+        ChatAssistantFactory.shutdown();
+        Database.shutdown();
+    }
+
+    private void onNoteChanged(NoteChangeEvent event) {
+        if (Platform.isFxApplicationThread()) {
+            pagedNotes.applyChange(event);
+        } else {
+            Platform.runLater(() -> pagedNotes.applyChange(event));
+        }
+    }
+
     private ToolBar createToolBar() {
         Button newNoteButton = new Button("✚ New");
         newNoteButton.setOnAction(e -> createNewNote());
@@ -237,17 +296,17 @@ public class App extends Application {
     }
 
     private void createNewNote() {
+        noteLoadRequest.cancel();
         currentNote = null;
         markdownEditor.clear();
         noteList.getSelectionModel().clearSelection();
-        notes.setAll(Database.getAllNotes());
         currentView = ViewState.EDIT;
         updateView();
     }
 
     private void saveCurrentNote() {
         String content = markdownEditor.getText();
-        if (content.isEmpty()) {
+        if (content.isEmpty() || saveInProgress) {
             return;
         }
 
@@ -262,38 +321,64 @@ public class App extends Application {
             currentNote.setContent(content);
         }
 
-        int noteId = Database.saveNote(currentNote);
-        if (noteId != 0) {
-            currentNote = Database.getNoteById(noteId);
-            refreshNoteList();
+        // Save a snapshot so later edits on the FX thread can't race with the background write
+        Note editing = currentNote;
+        Note snapshot = new Note(editing.getId(), title, content, editing.getCreatedOn(), editing.getUpdatedOn(),
+                editing.isEmbedded(), editing.isSubnote(), editing.getParentId());
+        saveInProgress = true;
+        AsyncDatabase.onFxThread(AsyncDatabase.saveNote(snapshot), noteId -> {
+            saveInProgress = false;
+            if (noteId == 0 || currentNote != editing) {
+                // Save failed, or the user already moved on to another note
+                return;
+            }
+            if (currentNote.getId() == 0) {
+                java.sql.Date today = new java.sql.Date(System.currentTimeMillis());
+                currentNote = new Note(noteId, title, content, today, today, false, false, 0);
+            }
+            // The list was already patched by the change event; just keep the note selected and in view
+            Note listed = pagedNotes.findById(noteId);
+            if (listed != null) {
+                noteList.getSelectionModel().select(listed);
+                noteList.scrollTo(listed);
+            }
             // Update the preview with the new content
             updateHtmlView(content);
             // Switch to preview mode to see the saved changes
             currentView = ViewState.PREVIEW;
             updateView();
-        }
+        }, error -> {
+            saveInProgress = false;
+            System.err.println("Error saving note: " + error.getMessage());
+        });
     }
 
     private void deleteCurrentNote() {
         if (currentNote != null) {
-            Database.deleteNote(currentNote.getId());
-            refreshNoteList();
+            AsyncDatabase.deleteNote(currentNote.getId());
             createNewNote();
         }
     }
 
     private void loadNoteContent(Note note) {
-        currentNote = Database.getNoteById(note.getId());
-        if (currentNote != null) {
-            markdownEditor.setText(currentNote.getContent());
-            currentView = ViewState.PREVIEW;
-            updateView();
-        }
+        noteLoadRequest.submit(AsyncDatabase.getNoteById(note.getId()), loaded -> {
+            if (loaded != null) {
+                currentNote = loaded;
+                markdownEditor.setText(currentNote.getContent());
+                currentView = ViewState.PREVIEW;
+                updateView();
+            }
+        });
+    }
+
+    private void refreshCategories() {
+        AsyncDatabase.onFxThread(AsyncDatabase.getAllCategories(), categories::setAll,
+                error -> System.err.println("Error loading categories: " + error.getMessage()));
     }
 
-    private void refreshNoteList() {
-        notes.setAll(Database.getAllNotes());
-        noteList.getSelectionModel().select(currentNote);
+    private void refreshTags() {
+        AsyncDatabase.onFxThread(AsyncDatabase.getAllTags(), tags::setAll,
+                error -> System.err.println("Error loading tags: " + error.getMessage()));
     }
 
     private void updateHtmlView(String markdown) {
@@ -411,19 +496,20 @@ public class App extends Application {
         dialog.setHeaderText("Enter a category to add");
         dialog.setContentText("Category:");
 
+        int noteId = currentNote.getId();
         Optional<String> result = dialog.showAndWait();
-        result.ifPresent(categoryName -> {
+        result.ifPresent(categoryName -> AsyncDatabase.run(() -> {
             Category category = Database.getCategoryByName(categoryName);
             if (category == null) {
                 int categoryId = Database.addCategory(categoryName);
                 if (categoryId != 0) {
-                    Database.addCategoryToNote(currentNote.getId(), categoryId);
-                    categories.setAll(Database.getAllCategories());
+                    Database.addCategoryToNote(noteId, categoryId);
+                    Platform.runLater(this::refreshCategories);
                 }
             } else {
-                Database.addCategoryToNote(currentNote.getId(), category.getId());
+                Database.addCategoryToNote(noteId, category.getId());
             }
-        });
+        }));
     }
 
     private void removeCategoryFromCurrentNote() {
@@ -433,8 +519,9 @@ public class App extends Application {
 
         Category selectedCategory = categoryList.getSelectionModel().getSelectedItem();
         if (selectedCategory != null) {
-            Database.removeCategoryFromNote(currentNote.getId(), selectedCategory.getId());
-            categories.setAll(Database.getAllCategories());
+            int noteId = currentNote.getId();
+            AsyncDatabase.run(() -> Database.removeCategoryFromNote(noteId, selectedCategory.getId()))
+                    .thenRun(() -> Platform.runLater(this::refreshCategories));
         }
     }
 
@@ -448,19 +535,20 @@ public class App extends Application {
         dialog.setHeaderText("Enter a tag to add");
         dialog.setContentText("Tag:");
 
+        int noteId = currentNote.getId();
         Optional<String> result = dialog.showAndWait();
-        result.ifPresent(tagName -> {
+        result.ifPresent(tagName -> AsyncDatabase.run(() -> {
             Tag tag = Database.getTagByName(tagName);
             if (tag == null) {
                 int tagId = Database.addTag(tagName);
                 if (tagId != 0) {
-                    Database.addTagToNote(currentNote.getId(), tagId);
-                    tags.setAll(Database.getAllTags());
+                    Database.addTagToNote(noteId, tagId);
+                    Platform.runLater(this::refreshTags);
                 }
             } else {
-                Database.addTagToNote(currentNote.getId(), tag.getId());
+                Database.addTagToNote(noteId, tag.getId());
             }
-        });
+        }));
     }
 
     private void removeTagFromCurrentNote() {
@@ -470,16 +558,18 @@ public class App extends Application {
 
         Tag selectedTag = tagList.getSelectionModel().getSelectedItem();
         if (selectedTag != null) {
-            Database.removeTagFromNote(currentNote.getId(), selectedTag.getId());
-            tags.setAll(Database.getAllTags());
+            int noteId = currentNote.getId();
+            AsyncDatabase.run(() -> Database.removeTagFromNote(noteId, selectedTag.getId()))
+                    .thenRun(() -> Platform.runLater(this::refreshTags));
         }
     }
 
     private void searchNotes(String searchText) {
         if (searchText == null || searchText.isEmpty()) {
-            notes.setAll(Database.getAllNotes());
+            noteQueryRequest.cancel();
+            pagedNotes.showAll();
         } else {
-            notes.setAll(Database.searchNotes(searchText));
+            noteQueryRequest.submit(AsyncDatabase.searchNotes(searchText), pagedNotes::showResults);
         }
     }
 
@@ -548,7 +638,9 @@ public class App extends Application {
     private void initializeChatAssistant() {
         new Thread(() -> {
             try {
-                chatAssistant = ChatAssistantFactory.createAssistant();
+                // The sidebar doesn't show earlier conversations, so the model shouldn't remember one either
+                ChatAssistantFactory.clearSession(CHAT_SESSION_ID);
+                chatAssistant = ChatAssistantFactory.createStreamingAssistant(CHAT_SESSION_ID);
                 Platform.runLater(() -> {
                     addChatMessage("AI", "Hello! I'm your AI assistant. Ask me anything about your notes!", false);
                 });
@@ -566,48 +658,162 @@ public class App extends Application {
             return;
         }
 
+        // A new question supersedes the answer still streaming in
+        cancelActiveChat();
+
         addChatMessage("You", userMessage, false);
         chatInputField.clear();
-        chatInputField.setDisable(true);
-        chatSendButton.setDisable(true);
         chatLoadingIndicator.setVisible(true);
         setRandomLoadingText();
 
-        new Thread(() -> {
+        ActiveChat chat = new ActiveChat();
+        activeChat = chat;
+        Thread requestThread = new Thread(() -> {
             try {
-                String response = chatAssistant.chat(userMessage);
-                
-                // Validate response
-                if (response == null || response.trim().isEmpty()) {
-                    response = "I received your message but couldn't generate a response. Please try again.";
-                }
-                
-                final String finalResponse = response;
-                Platform.runLater(() -> {
-                    addChatMessage("AI", finalResponse, false);
-                    chatInputField.setDisable(false);
-                    chatSendButton.setDisable(false);
-                    chatLoadingIndicator.setVisible(false);
-                    loadingTextLabel.setVisible(false);
-                });
+                chatSessionCleared.join();
+                // start() runs retrieval on this thread; tokens then arrive on the model's own threads
+                chatAssistant.chat(userMessage)
+                        .onPartialResponseWithContext((partial, context) -> {
+                            chat.handle = context.streamingHandle();
+                            if (chat.cancelled) {
+                                context.streamingHandle().cancel();
+                                return;
+                            }
+                            chat.append(partial.text());
+                        })
+                        .onCompleteResponse(response -> Platform.runLater(() -> finishChat(chat, null)))
+                        .onError(error -> {
+                            if (!chat.cancelled) {
+                                error.printStackTrace();
+                            }
+                            Platform.runLater(() -> finishChat(chat, error));
+                        })
+                        .start();
             } catch (Exception e) {
-                Platform.runLater(() -> {
-                    String errorMsg = "Error: " + e.getMessage();
-                    if (e.getMessage() != null && e.getMessage().contains("text segment cannot be null")) {
-                        errorMsg = "No notes found. Please create and save some notes first before using the AI chat.";
-                    }
-                    addChatMessage("System", errorMsg, false);
-                    chatInputField.setDisable(false);
-                    chatSendButton.setDisable(false);
-                    chatLoadingIndicator.setVisible(false);
-                    loadingTextLabel.setVisible(false);
-                });
                 e.printStackTrace();
+                Platform.runLater(() -> finishChat(chat, e));
             }
-        }).start();
+        }, "notia-chat-request");
+        requestThread.setDaemon(true);
+        requestThread.start();
+    }
+
+    // Moves buffered tokens into the streaming bubble; runs on the FX thread every CHAT_FLUSH_INTERVAL_MS
+    private void flushChat(ActiveChat chat) {
+        String text = chat.text();
+        if (chat.cancelled || text.length() == chat.shownLength) {
+            return;
+        }
+        if (chat.bubble == null) {
+            chatLoadingIndicator.setVisible(false);
+            loadingTextLabel.setVisible(false);
+            chat.bubble = createChatMessage("AI", "");
+            chat.bubbleText = (Label) chat.bubble.getChildren().get(1);
+            chatMessagesContainer.getChildren().add(chat.bubble);
+        }
+        chat.bubbleText.setText(text);
+        chat.shownLength = text.length();
+        chatScrollPane.setVvalue(1.0);
+    }
+
+    private void finishChat(ActiveChat chat, Throwable error) {
+        chat.flusher.stop();
+        if (chat.cancelled) {
+            return;
+        }
+        activeChat = null;
+        chatLoadingIndicator.setVisible(false);
+        loadingTextLabel.setVisible(false);
+        String response = chat.text();
+        if (chat.bubble != null) {
+            chatMessagesContainer.getChildren().remove(chat.bubble);
+        }
+        if (error != null) {
+            if (!response.trim().isEmpty()) {
+                addChatMessage("AI", response, false);
+            }
+            addChatMessage("System", "Error: " + error.getMessage(), false);
+        } else if (response.trim().isEmpty()) {
+            addChatMessage("AI", "I received your message but couldn't generate a response. Please try again.", false);
+        } else {
+            // Re-render the finished answer, now as markdown
+            addChatMessage("AI", response, false);
+        }
+    }
+
+    private void cancelActiveChat() {
+        ActiveChat chat = activeChat;
+        if (chat == null) {
+            return;
+        }
+        activeChat = null;
+        chat.cancelled = true;
+        chat.flusher.stop();
+        if (chat.handle != null) {
+            chat.handle.cancel();
+        }
+        chatLoadingIndicator.setVisible(false);
+        loadingTextLabel.setVisible(false);
+        String partial = chat.text();
+        if (chat.bubble != null) {
+            chatMessagesContainer.getChildren().remove(chat.bubble);
+        }
+        if (!partial.trim().isEmpty()) {
+            addChatMessage("AI", partial + " …", false);
+        }
+    }
+
+    /**
+     * One streaming response. Tokens are appended from the model's threads and shown by a
+     * timeline on the FX thread, so a fast stream costs one UI update per flush interval
+     * rather than one per token.
+     */
+    private class ActiveChat {
+        private final StringBuilder buffer = new StringBuilder();
+        final javafx.animation.Timeline flusher;
+        volatile boolean cancelled;
+        volatile StreamingHandle handle;
+        // FX thread only
+        VBox bubble;
+        Label bubbleText;
+        int shownLength;
+
+        ActiveChat() {
+            flusher = new javafx.animation.Timeline(new javafx.animation.KeyFrame(
+                    javafx.util.Duration.millis(CHAT_FLUSH_INTERVAL_MS), e -> flushChat(this)));
+            flusher.setCycleCount(javafx.animation.Animation.INDEFINITE);
+            flusher.play();
+        }
+
+        synchronized void append(String token) {
+            buffer.append(token);
+        }
+
+        synchronized String text() {
+            return buffer.toString();
+        }
     }
 
     private void addChatMessage(String sender, String message, boolean isLoading) {
+        VBox messageBox = createChatMessage(sender, message);
+
+        // Fade in animation
+        messageBox.setOpacity(0);
+        chatMessagesContainer.getChildren().add(messageBox);
+        
+        javafx.animation.FadeTransition fadeIn = new javafx.animation.FadeTransition(
+            javafx.util.Duration.millis(300), messageBox);
+        fadeIn.setFromValue(0.0);
+        fadeIn.setToValue(1.0);
+        fadeIn.play();
+
+        Platform.runLater(() -> {
+            chatScrollPane.setVvalue(1.0);
+        });
+    }
+
+    // A chat bubble: sender label, then the message as rendered markdown or as a plain Label
+    private VBox createChatMessage(String sender, String message) {
         VBox messageBox = new VBox(5);
         messageBox.setPadding(new Insets(10));
         
@@ -744,23 +950,15 @@ public class App extends Application {
             
             messageBox.getChildren().addAll(senderLabel, messageLabel);
         }
-        
-        // Fade in animation
-        messageBox.setOpacity(0);
-        chatMessagesContainer.getChildren().add(messageBox);
-        
-        javafx.animation.FadeTransition fadeIn = new javafx.animation.FadeTransition(
-            javafx.util.Duration.millis(300), messageBox);
-        fadeIn.setFromValue(0.0);
-        fadeIn.setToValue(1.0);
-        fadeIn.play();
-
-        Platform.runLater(() -> {
-            chatScrollPane.setVvalue(1.0);
-        });
+        return messageBox;
     }
 
     private void clearChat() {
+        cancelActiveChat();
+        if (chatAssistant != null) {
+            // Off the FX thread: clearing deletes the saved memory from MySQL
+            chatSessionCleared = AsyncDatabase.run(() -> ChatAssistantFactory.clearSession(CHAT_SESSION_ID));
+        }
         chatMessagesContainer.getChildren().clear();
         addChatMessage("AI", "Chat cleared. How can I help you?", false);
     }
@@ -0,0 +1,151 @@
+package com.notia;
+
+import javafx.application.Platform;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture-returning variants of the {@link Database} API.
+ *
+ * Calls run on a dedicated executor (virtual threads when the JDK has them,
+ * otherwise a small daemon pool) so the JavaFX application thread never
+ * waits on MySQL or on embedding. Use {@link #onFxThread} or a
+ * {@link LatestRequest} to get results back onto the FX thread.
+ */
+public class AsyncDatabase {
+
+    private static final ExecutorService executor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Java 21+: one cheap virtual thread per call; looked up reflectively so we still run on 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "notia-db-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, executor);
+    }
+
+    public static CompletableFuture<Note> getNoteById(int id) {
+        return supply(() -> Database.getNoteById(id));
+    }
+
+    public static CompletableFuture<List<Note>> getNotesPage(Note after, int pageSize, Database.NoteOrder order) {
+        return supply(() -> Database.getNotesPage(after, pageSize, order));
+    }
+
+    public static CompletableFuture<List<Note>> searchNotes(String searchText) {
+        return supply(() -> Database.searchNotes(searchText));
+    }
+
+    public static CompletableFuture<List<Note>> getNotesByCategory(int categoryId) {
+        return supply(() -> Database.getNotesByCategory(categoryId));
+    }
+
+    public static CompletableFuture<List<Note>> getNotesByTag(int tagId) {
+        return supply(() -> Database.getNotesByTag(tagId));
+    }
+
+    public static CompletableFuture<Integer> saveNote(Note note) {
+        return supply(() -> Database.saveNote(note));
+    }
+
+    public static CompletableFuture<Void> deleteNote(int id) {
+        return run(() -> Database.deleteNote(id));
+    }
+
+    public static CompletableFuture<List<Category>> getAllCategories() {
+        return supply(Database::getAllCategories);
+    }
+
+    public static CompletableFuture<List<Tag>> getAllTags() {
+        return supply(Database::getAllTags);
+    }
+
+    /**
+     * Delivers the result (or failure) of {@code future} on the JavaFX application thread.
+     */
+    public static <T> void onFxThread(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                Throwable cause = unwrap(error);
+                if (!(cause instanceof CancellationException)) {
+                    onError.accept(cause);
+                }
+            }
+        }));
+    }
+
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Keeps only the most recent request of one kind (e.g. "load the selected note").
+     * Submitting a new request cancels the previous one and a superseded result is
+     * never delivered, so a slow response can't overwrite a newer selection.
+     * Must be used from the JavaFX application thread.
+     */
+    public static class LatestRequest {
+        private CompletableFuture<?> current;
+
+        public <T> void submit(CompletableFuture<T> future, Consumer<T> onSuccess) {
+            submit(future, onSuccess, error -> {
+                System.err.println("Database request failed: " + error.getMessage());
+                error.printStackTrace();
+            });
+        }
+
+        public <T> void submit(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+            cancel();
+            current = future;
+            onFxThread(future, result -> {
+                if (current == future) {
+                    current = null;
+                    onSuccess.accept(result);
+                }
+            }, error -> {
+                if (current == future) {
+                    current = null;
+                    onError.accept(error);
+                }
+            });
+        }
+
+        public void cancel() {
+            if (current != null) {
+                current.cancel(false);
+                current = null;
+            }
+        }
+    }
+}
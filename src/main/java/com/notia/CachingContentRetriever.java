@@ -0,0 +1,126 @@
+package com.notia;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Reuses retrieval results for a query seen before, as long as nothing retrieval reads
+ * has changed since. The key is the normalized query text, the retrieval settings
+ * (max results, min score, scope filter) and an index generation that the store bumps on
+ * every write ({@link Database#getRetrievalGeneration()}); a write therefore makes every
+ * older entry unreachable, and those age out of the LRU.
+ *
+ * Failures aren't cached: exceptions from the delegate pass straight through.
+ */
+public class CachingContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever delegate;
+    private final int maxResults;
+    private final double minScore;
+    private final Supplier<Object> scope;
+    private final LongSupplier generation;
+    private final int maxEntries;
+    // Guarded by itself; access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<Key, List<Content>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingContentRetriever(ContentRetriever delegate, int maxResults, double minScore, Supplier<Object> scope,
+                                   LongSupplier generation, int maxEntries) {
+        this.delegate = delegate;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.scope = scope;
+        this.generation = generation;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Content>> eldest) {
+                return size() > CachingContentRetriever.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        if (maxEntries <= 0) {
+            return delegate.retrieve(query);
+        }
+        // Read before retrieving: if the index changes meanwhile, the result is stored under the old generation
+        Key key = new Key(CachingEmbeddingModel.normalize(query.text()), maxResults, minScore, scope.get(),
+                generation.getAsLong());
+        synchronized (cache) {
+            List<Content> cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        List<Content> results = delegate.retrieve(query);
+        if (results != null) {
+            results = List.copyOf(results);
+            synchronized (cache) {
+                cache.put(key, results);
+            }
+        }
+        return results;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        long lookups = hits.get() + misses.get();
+        return String.format("retrievalCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%]", size, maxEntries,
+                hits.get(), misses.get(), lookups == 0 ? 0 : hits.get() * 100.0 / lookups);
+    }
+
+    private static class Key {
+        final String query;
+        final int maxResults;
+        final double minScore;
+        final Object scope;
+        final long generation;
+
+        Key(String query, int maxResults, double minScore, Object scope, long generation) {
+            this.query = query;
+            this.maxResults = maxResults;
+            this.minScore = minScore;
+            this.scope = scope;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return query.equals(other.query) && maxResults == other.maxResults && minScore == other.minScore
+                    && Objects.equals(scope, other.scope) && generation == other.generation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, maxResults, minScore, scope, generation);
+        }
+    }
+}
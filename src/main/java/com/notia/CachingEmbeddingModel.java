@@ -0,0 +1,159 @@
+package com.notia;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Embedding model for search queries that remembers recent query embeddings, so a
+ * repeated question or a search-as-you-type prefix typed again doesn't go through ONNX.
+ *
+ * Single-text calls ({@code embed}) are cached in memory, least recently used first out
+ * once there are more than {@code maxEntries}, and expired {@code ttlMillis} after they
+ * were computed. Queries are keyed on normalized text: Unicode NFC, lowercased (the
+ * MiniLM tokenizer is uncased) and with whitespace collapsed. Batch calls
+ * ({@code embedAll}) are documents, not queries, and go straight to the model; stored
+ * text is cached persistently by {@link EmbeddingCache} instead.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    // Guarded by itself; access order makes iteration order least recently used first
+    private final LinkedHashMap<String, CachedEmbedding> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEmbedding> eldest) {
+                if (size() <= CachingEmbeddingModel.this.maxEntries) {
+                    return false;
+                }
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        String key = normalize(text);
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedEmbedding cached = cache.get(key);
+            if (cached != null) {
+                if (now - cached.createdAt < ttlMillis) {
+                    hits.incrementAndGet();
+                    return Response.from(cached.embedding);
+                }
+                cache.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        // Embedded outside the lock; two threads missing on the same query both compute it, which is harmless
+        Embedding embedding = delegate.embed(text).content();
+        if (maxEntries > 0) {
+            synchronized (cache) {
+                cache.put(key, new CachedEmbedding(embedding, now));
+            }
+        }
+        return Response.from(embedding);
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        return embed(textSegment.text());
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return delegate.embedAll(textSegments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return new Stats(size, maxEntries, hits.get(), misses.get(), evictions.get(), expirations.get());
+    }
+
+    private static class CachedEmbedding {
+        final Embedding embedding;
+        final long createdAt;
+
+        CachedEmbedding(Embedding embedding, long createdAt) {
+            this.embedding = embedding;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public static class Stats {
+        public final int size;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long expirations;
+
+        Stats(int size, int maxSize, long hits, long misses, long evictions, long expirations) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queryEmbeddings[size=%d/%d, hits=%d, misses=%d, evictions=%d, expirations=%d, hitRate=%.1f%%]",
+                    size, maxSize, hits, misses, evictions, expirations, hitRate() * 100);
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.notia;
 
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.Result;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
 import shared.Assistant;
+import shared.StreamingAssistant;
 
 import java.util.List;
 import java.util.Collections;
@@ -25,10 +33,33 @@ import static shared.Utils.*;
 public class ChatAssistantFactory {
 
     // Customizable RAG settings
+    private static final String MODEL_NAME = "gemini-2.5-pro";
     private static final double TEMPERATURE = 0.7; // Range: 0.0 (deterministic) to 1.0 (creative)
     private static final int MAX_RESULTS = 3; // Number of relevant notes to retrieve
     private static final double MIN_SCORE = 0.5; // Minimum similarity score (0.0 to 1.0)
-    private static final int CHAT_MEMORY_SIZE = 10; // Number of messages to remember
+    // Candidates each retrieval stage hands to rank fusion (see HybridContentRetriever)
+    private static final int VECTOR_CANDIDATES = 12; // Chunks; several may belong to one note
+    private static final int KEYWORD_CANDIDATES = 8; // Notes from the BM25 ranking
+    // Retrieval results kept per query and index generation (0 disables the cache)
+    private static final int RETRIEVAL_CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("NOTIA_RETRIEVAL_CACHE_SIZE", "256"));
+    // Tokens of retrieved notes added to a question (see TokenBudgetContentInjector)
+    private static final int CONTEXT_TOKEN_BUDGET = Integer.parseInt(System.getenv().getOrDefault("NOTIA_CONTEXT_TOKEN_BUDGET", "1500"));
+    // Tokens of conversation kept verbatim; older messages are summarized (see SummarizingChatMemory)
+    private static final int MEMORY_TOKEN_BUDGET = Integer.parseInt(System.getenv().getOrDefault("NOTIA_MEMORY_TOKEN_BUDGET", "1000"));
+    private static final String SUMMARY_MODEL_NAME = "gemini-2.5-flash";
+    private static final TokenCountEstimator tokenEstimator = new HeuristicTokenCountEstimator();
+    // Conversations whose memory is kept in memory; less recently used ones are saved to MySQL
+    private static final int MAX_SESSIONS = Integer.parseInt(System.getenv().getOrDefault("NOTIA_CHAT_SESSIONS", "32"));
+    private static volatile Services services;
+
+    // Answers to near-identical questions, shared by all assistants (0 entries disables it)
+    private static final int RESPONSE_CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("NOTIA_RESPONSE_CACHE_SIZE", "200"));
+    private static final float RESPONSE_CACHE_THRESHOLD = Float.parseFloat(System.getenv().getOrDefault("NOTIA_RESPONSE_CACHE_THRESHOLD", "0.95"));
+    private static final long RESPONSE_CACHE_TTL_MS = Long.parseLong(System.getenv().getOrDefault("NOTIA_RESPONSE_CACHE_TTL_MS", "86400000"));
+    private static final SemanticResponseCache responseCache = createResponseCache();
+
+    // Metadata filter applied to every retrieval, e.g. VectorDB.tagFilter("work"); null searches all notes
+    private static volatile Filter retrievalScope;
     
     private static final String SYSTEM_PROMPT = 
         "You are an intelligent note-taking assistant integrated into the Notia app. " +
@@ -62,41 +93,177 @@ public class ChatAssistantFactory {
         }
     }
 
-    public static Assistant createAssistant() {
-        ChatModel chatModel = GoogleAiGeminiChatModel.builder()
-                .apiKey(GEMINI_API_KEY)
-                .modelName("gemini-2.5-pro")
-                .temperature(TEMPERATURE)
-                .build();
+    // The chat interfaces AiServices implements once for all conversations, keyed by @MemoryId
+    interface SessionAssistant extends ChatMemoryAccess {
+        Result<String> chat(@MemoryId Object sessionId, @UserMessage String userMessage);
+    }
+
+    interface StreamingSessionAssistant extends ChatMemoryAccess {
+        TokenStream chat(@MemoryId Object sessionId, @UserMessage String userMessage);
+    }
+
+    // Models, retrieval and AiServices shared by every conversation; built on first use
+    private static class Services {
+        final ChatSessionPool sessions;
+        final SessionAssistant assistant;
+        final StreamingSessionAssistant streamingAssistant;
+
+        Services() {
+            ChatModel summaryModel = GoogleAiGeminiChatModel.builder()
+                    .apiKey(GEMINI_API_KEY)
+                    .modelName(SUMMARY_MODEL_NAME)
+                    .temperature(0.2)
+                    .build();
+            sessions = new ChatSessionPool(MAX_SESSIONS, new MySqlChatMemoryStore(),
+                    id -> new SummarizingChatMemory(id, summaryModel, tokenEstimator, MEMORY_TOKEN_BUDGET));
+            RetrievalAugmentor retrievalAugmentor = createRetrievalAugmentor();
+
+            assistant = AiServices.builder(SessionAssistant.class)
+                    .chatModel(GoogleAiGeminiChatModel.builder()
+                            .apiKey(GEMINI_API_KEY)
+                            .modelName(MODEL_NAME)
+                            .temperature(TEMPERATURE)
+                            .build())
+                    .retrievalAugmentor(retrievalAugmentor)
+                    .chatMemoryProvider(sessions)
+                    .systemMessageProvider(chatMemoryId -> SYSTEM_PROMPT)
+                    .build();
+            streamingAssistant = AiServices.builder(StreamingSessionAssistant.class)
+                    .streamingChatModel(GoogleAiGeminiStreamingChatModel.builder()
+                            .apiKey(GEMINI_API_KEY)
+                            .modelName(MODEL_NAME)
+                            .temperature(TEMPERATURE)
+                            .build())
+                    .retrievalAugmentor(retrievalAugmentor)
+                    .chatMemoryProvider(sessions)
+                    .systemMessageProvider(chatMemoryId -> SYSTEM_PROMPT)
+                    .build();
+            sessions.addEvictionListener(assistant::evictChatMemory);
+            sessions.addEvictionListener(streamingAssistant::evictChatMemory);
+        }
+    }
+
+    private static Services services() {
+        Services current = services;
+        if (current == null) {
+            synchronized (ChatAssistantFactory.class) {
+                current = services;
+                if (current == null) {
+                    current = new Services();
+                    services = current;
+                }
+            }
+        }
+        return current;
+    }
 
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+    /**
+     * An assistant for conversation {@code sessionId}. Assistants for the same id share
+     * one memory; all of them share the chat model, retrieval and caches, so creating one
+     * is cheap. See {@link ChatSessionPool} for how long memories stay in memory.
+     */
+    public static Assistant createAssistant(Object sessionId) {
+        Services shared = services();
+        return responseCache.wrap(userMessage -> shared.assistant.chat(sessionId, userMessage),
+                () -> shared.sessions.get(sessionId), ChatAssistantFactory::getRetrievalScope);
+    }
+
+    /**
+     * Like {@link #createAssistant(Object)}, but the answer arrives as a {@link TokenStream}
+     * of partial responses while Gemini generates it. Retrieval still happens up front, in
+     * {@code TokenStream.start()}, so call that off the UI thread.
+     */
+    public static StreamingAssistant createStreamingAssistant(Object sessionId) {
+        Services shared = services();
+        return responseCache.wrapStreaming(userMessage -> shared.streamingAssistant.chat(sessionId, userMessage),
+                () -> shared.sessions.get(sessionId), ChatAssistantFactory::getRetrievalScope);
+    }
+
+    // Forgets the conversation, including its saved memory
+    public static void clearSession(Object sessionId) {
+        services().sessions.clear(sessionId);
+    }
 
-        EmbeddingStore<TextSegment> embeddingStore = ChromaEmbeddingStore.builder()
-                .apiVersion(V2)
-                .baseUrl("http://[::1]:8000")
-                .collectionName("notia-notes-collection")
+    // Saves the memory of every active conversation; call before exiting
+    public static void shutdown() {
+        Services current = services;
+        if (current != null) {
+            current.sessions.saveAll();
+            System.out.println("Saved chat memory: " + current.sessions);
+        }
+    }
+
+    private static SemanticResponseCache createResponseCache() {
+        SemanticResponseCache cache = new SemanticResponseCache(RESPONSE_CACHE_SIZE, RESPONSE_CACHE_THRESHOLD,
+                RESPONSE_CACHE_TTL_MS);
+        // Drops answers built from a note as soon as that note is edited or deleted
+        Database.addNoteChangeListener(cache);
+        return cache;
+    }
+
+    public static SemanticResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    private static RetrievalAugmentor createRetrievalAugmentor() {
+        return DefaultRetrievalAugmentor.builder()
+                .contentRetriever(createContentRetriever())
+                // Fits the retrieved chunks into a token budget, without the overlap between them
+                .contentInjector(new TokenBudgetContentInjector(tokenEstimator, CONTEXT_TOKEN_BUDGET))
                 .build();
+    }
+
+    private static ContentRetriever createContentRetriever() {
+        // Share the store notes are written to, whichever backend it is; fall back to Chroma
+        VectorDB vectorDB = Database.getVectorDB();
+        EmbeddingModel embeddingModel;
+        EmbeddingStore<TextSegment> embeddingStore;
+        if (vectorDB != null) {
+            embeddingModel = vectorDB.getQueryEmbeddingModel();
+            embeddingStore = vectorDB.getEmbeddingStore();
+        } else {
+            embeddingModel = EmbeddingService.get().queryModel();
+            embeddingStore = ChromaEmbeddingStore.builder()
+                    .apiVersion(V2)
+                    .baseUrl(VectorDB.DEFAULT_CHROMA_URL)
+                    .collectionName(VectorDB.DEFAULT_COLLECTION)
+                    .build();
+        }
 
-        ContentRetriever baseRetriever = EmbeddingStoreContentRetriever.builder()
+        ContentRetriever vectorRetriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
                 .embeddingModel(embeddingModel)
-                .maxResults(MAX_RESULTS)
+                .maxResults(VECTOR_CANDIDATES)
                 .minScore(MIN_SCORE)
+                // Read on every query, so changing the scope doesn't require a new assistant
+                .dynamicFilter(query -> retrievalScope)
                 .build();
-        
-        // Wrap with safe retriever to handle empty results
-        ContentRetriever contentRetriever = new SafeContentRetriever(baseRetriever);
 
-        ChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(CHAT_MEMORY_SIZE);
+        // Keyword matches catch exact identifiers and names the embedding model blurs
+        ContentRetriever hybridRetriever = new HybridContentRetriever(vectorRetriever, KEYWORD_CANDIDATES, MAX_RESULTS,
+                () -> retrievalScope);
 
-        return AiServices.builder(Assistant.class)
-                .chatModel(chatModel)
-                .contentRetriever(contentRetriever)
-                .chatMemory(chatMemory)
-                .systemMessageProvider(chatMemoryId -> SYSTEM_PROMPT)
-                .build();
+        // Same query on an unchanged index: reuse the last results
+        ContentRetriever baseRetriever = new CachingContentRetriever(hybridRetriever, MAX_RESULTS, MIN_SCORE,
+                () -> retrievalScope, Database::getRetrievalGeneration, RETRIEVAL_CACHE_SIZE);
+        
+        // Wrap with safe retriever to handle empty results
+        return new SafeContentRetriever(baseRetriever);
     }
     
+    /**
+     * Limits what assistants retrieve to chunks matching {@code filter} (see
+     * {@link VectorDB#tagFilter} and {@link VectorDB#categoryFilter}); null removes the limit.
+     * The filter runs inside the vector store.
+     */
+    public static void setRetrievalScope(Filter filter) {
+        retrievalScope = filter;
+    }
+
+    public static Filter getRetrievalScope() {
+        return retrievalScope;
+    }
+
     // Getter methods for configuration (useful for UI settings)
     public static double getTemperature() {
         return TEMPERATURE;
@@ -0,0 +1,116 @@
+package com.notia;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The chat memories of active conversations, keyed by conversation id. At most
+ * {@code maxSessions} are kept in memory; when another conversation starts, the least
+ * recently used one is saved to the {@link ChatMemoryStore} and dropped, and it is read
+ * back from the store if that conversation continues later.
+ *
+ * Assistants built with {@code chatMemoryProvider(pool)} keep their own map of memories,
+ * so they are registered with {@link #addEvictionListener} to forget a memory when the
+ * pool does; otherwise they would keep every conversation alive.
+ */
+public class ChatSessionPool implements ChatMemoryProvider {
+
+    private final int maxSessions;
+    private final ChatMemoryStore store;
+    private final Function<Object, SummarizingChatMemory> memoryFactory;
+    private final List<Consumer<Object>> evictionListeners = new CopyOnWriteArrayList<>();
+    // Guarded by itself; access order makes iteration order least recently used first.
+    // Loads and saves happen under the lock too, so a conversation is never read back while it is being saved.
+    private final LinkedHashMap<Object, SummarizingChatMemory> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long restored = 0;
+    private long evicted = 0;
+
+    public ChatSessionPool(int maxSessions, ChatMemoryStore store, Function<Object, SummarizingChatMemory> memoryFactory) {
+        this.maxSessions = maxSessions;
+        this.store = store;
+        this.memoryFactory = memoryFactory;
+    }
+
+    public void addEvictionListener(Consumer<Object> listener) {
+        evictionListeners.add(listener);
+    }
+
+    @Override
+    public SummarizingChatMemory get(Object memoryId) {
+        synchronized (sessions) {
+            SummarizingChatMemory memory = sessions.get(memoryId);
+            if (memory != null) {
+                return memory;
+            }
+            memory = memoryFactory.apply(memoryId);
+            List<ChatMessage> saved = store.getMessages(memoryId);
+            if (!saved.isEmpty()) {
+                memory.restore(saved);
+                restored++;
+            }
+            sessions.put(memoryId, memory);
+            Iterator<Map.Entry<Object, SummarizingChatMemory>> eldest = sessions.entrySet().iterator();
+            while (sessions.size() > maxSessions) {
+                Map.Entry<Object, SummarizingChatMemory> entry = eldest.next();
+                eldest.remove();
+                store.updateMessages(entry.getKey(), entry.getValue().snapshot());
+                notifyEvicted(entry.getKey());
+                evicted++;
+            }
+            return memory;
+        }
+    }
+
+    /**
+     * Forgets a conversation, in memory and in the store; its next message starts a new one.
+     */
+    public void clear(Object memoryId) {
+        synchronized (sessions) {
+            SummarizingChatMemory memory = sessions.remove(memoryId);
+            if (memory != null) {
+                memory.clear();
+                notifyEvicted(memoryId);
+            }
+            store.deleteMessages(memoryId);
+        }
+    }
+
+    // Saves every active conversation, e.g. before the application exits
+    public void saveAll() {
+        synchronized (sessions) {
+            for (Map.Entry<Object, SummarizingChatMemory> entry : sessions.entrySet()) {
+                store.updateMessages(entry.getKey(), entry.getValue().snapshot());
+            }
+        }
+    }
+
+    public List<Object> activeSessions() {
+        synchronized (sessions) {
+            return new ArrayList<>(sessions.keySet());
+        }
+    }
+
+    private void notifyEvicted(Object memoryId) {
+        for (Consumer<Object> listener : evictionListeners) {
+            listener.accept(memoryId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (sessions) {
+            return String.format("chatSessions[active=%d/%d, restored=%d, evicted=%d]",
+                    sessions.size(), maxSessions, restored, evicted);
+        }
+    }
+}
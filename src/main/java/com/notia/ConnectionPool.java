@@ -0,0 +1,558 @@
+package com.notia;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small bounded JDBC connection pool used by {@link Database}.
+ *
+ * Connections handed out are proxies: calling close() returns the physical
+ * connection to the pool instead of closing it, so existing
+ * try-with-resources code keeps working unchanged.
+ *
+ * Each physical connection also keeps an LRU cache of prepared statements
+ * keyed by SQL text. Closing a cached statement only resets it, so hot
+ * queries are prepared once per connection (server-side when the driver
+ * is configured with useServerPrepStmts=true).
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = new HashSet<>();
+    private int totalConnections = 0;
+    private boolean closed = false;
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Instrumentation counters
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password, int maxSize, long maxWaitMillis,
+                          long idleTimeoutMillis, long validationIntervalMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notia-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long shortest = leakThresholdMillis > 0 ? Math.min(idleTimeoutMillis, leakThresholdMillis) : idleTimeoutMillis;
+        long period = Math.max(1000, shortest / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        PooledConnection pc = null;
+        boolean createNew = false;
+
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            while (pc == null && !createNew) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                pc = idle.pollFirst();
+                if (pc == null) {
+                    if (totalConnections < maxSize) {
+                        // Reserve a slot; the physical connect happens outside the lock
+                        totalConnections++;
+                        createNew = true;
+                    } else {
+                        if (remaining <= 0) {
+                            timeoutCount.incrementAndGet();
+                            throw new SQLException("Timed out after " + maxWaitMillis +
+                                    "ms waiting for a database connection (" + maxSize + " in use)");
+                        }
+                        remaining = available.awaitNanos(remaining);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (createNew) {
+            pc = createPhysicalConnection();
+        } else if (System.currentTimeMillis() - pc.lastUsed > validationIntervalMillis && !isValid(pc)) {
+            // Stale idle connection (e.g. closed by MySQL wait_timeout) - replace it in the same slot
+            validationFailureCount.incrementAndGet();
+            try {
+                pc.physical.close();
+            } catch (SQLException e) {
+                // Already broken, nothing more to do
+            }
+            destroyedCount.incrementAndGet();
+            pc = createPhysicalConnection();
+        }
+
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.leakReported = false;
+        pc.borrowTrace = leakThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+        lock.lock();
+        try {
+            borrowed.add(pc);
+        } finally {
+            lock.unlock();
+        }
+
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+        return pc.newHandle();
+    }
+
+    private PooledConnection createPhysicalConnection() throws SQLException {
+        try {
+            Connection physical = DriverManager.getConnection(url, user, password);
+            createdCount.incrementAndGet();
+            return new PooledConnection(physical);
+        } catch (SQLException e) {
+            lock.lock();
+            try {
+                totalConnections--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        boolean reusable;
+        try {
+            reusable = !pc.physical.isClosed();
+            if (reusable && !pc.physical.getAutoCommit()) {
+                // Never hand out a connection with a half-finished transaction
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            if (reusable && !closed) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closePhysical(pc);
+    }
+
+    private void closePhysical(PooledConnection pc) {
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            // Already broken, nothing more to do
+        }
+        destroyedCount.incrementAndGet();
+        lock.lock();
+        try {
+            totalConnections--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> evicted = new ArrayList<>();
+        List<PooledConnection> suspectedLeaks = new ArrayList<>();
+
+        lock.lock();
+        try {
+            // Idle connections are kept most-recently-used first, so the stale ones sit at the tail
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMillis) {
+                    it.remove();
+                    evicted.add(pc);
+                }
+            }
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                        pc.leakReported = true;
+                        suspectedLeaks.add(pc);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pc : evicted) {
+            closePhysical(pc);
+        }
+        for (PooledConnection pc : suspectedLeaks) {
+            leakCount.incrementAndGet();
+            System.err.println("Warning: Possible connection leak - connection held for " +
+                    (now - pc.borrowedAt) + "ms");
+            if (pc.borrowTrace != null) {
+                pc.borrowTrace.printStackTrace();
+            }
+        }
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pc : toClose) {
+            closePhysical(pc);
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(totalConnections, idle.size(), borrowed.size(), maxSize,
+                    createdCount.get(), destroyedCount.get(), borrowCount.get(),
+                    totalWaitNanos.get(), timeoutCount.get(), validationFailureCount.get(), leakCount.get(),
+                    statementCacheHits.get(), statementCacheMisses.get(), statementCacheEvictions.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Point-in-time snapshot of the pool counters.
+     */
+    public static class Stats {
+        public final int total;
+        public final int idle;
+        public final int active;
+        public final int maxSize;
+        public final long created;
+        public final long destroyed;
+        public final long borrows;
+        public final long totalWaitNanos;
+        public final long timeouts;
+        public final long validationFailures;
+        public final long leaks;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+        public final long statementCacheEvictions;
+
+        Stats(int total, int idle, int active, int maxSize, long created, long destroyed, long borrows,
+              long totalWaitNanos, long timeouts, long validationFailures, long leaks,
+              long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+            this.total = total;
+            this.idle = idle;
+            this.active = active;
+            this.maxSize = maxSize;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.borrows = borrows;
+            this.totalWaitNanos = totalWaitNanos;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        public double averageWaitMillis() {
+            return borrows == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrows;
+        }
+
+        public double statementCacheHitRate() {
+            long lookups = statementCacheHits + statementCacheMisses;
+            return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool[total=%d/%d, idle=%d, active=%d, created=%d, destroyed=%d, " +
+                            "borrows=%d, avgWait=%.3fms, timeouts=%d, validationFailures=%d, leaks=%d, " +
+                            "stmtCache[hits=%d, misses=%d, evictions=%d, hitRate=%.1f%%]]",
+                    total, maxSize, idle, active, created, destroyed, borrows, averageWaitMillis(),
+                    timeouts, validationFailures, leaks, statementCacheHits, statementCacheMisses,
+                    statementCacheEvictions, statementCacheHitRate() * 100);
+        }
+    }
+
+    private class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile boolean leakReported;
+        volatile Exception borrowTrace;
+        // Only touched by the thread currently holding the connection
+        final LinkedHashMap<String, CachedStatement> statementCache;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    statementCacheEvictions.incrementAndGet();
+                    CachedStatement evicted = eldest.getValue();
+                    if (evicted.inUse) {
+                        // Still open in the caller; close it for real once they are done
+                        evicted.evicted = true;
+                    } else {
+                        closeQuietly(evicted.statement);
+                    }
+                    return true;
+                }
+            };
+        }
+
+        PreparedStatement prepareCached(String sql, Connection handle) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return physical.prepareStatement(sql);
+            }
+            CachedStatement cached = statementCache.get(sql);
+            if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+                statementCacheHits.incrementAndGet();
+            } else {
+                statementCacheMisses.incrementAndGet();
+                PreparedStatement statement = physical.prepareStatement(sql);
+                if (cached != null && cached.inUse) {
+                    // Same SQL already open on this connection (nested use) - don't cache the second copy
+                    return statement;
+                }
+                cached = new CachedStatement(statement);
+                statementCache.put(sql, cached);
+            }
+            cached.inUse = true;
+            return cached.newHandle(handle);
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse;
+        boolean evicted;
+
+        // Driver default, restored when a borrower changed it
+        final int defaultFetchSize;
+
+        CachedStatement(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.defaultFetchSize = statement.getFetchSize();
+        }
+
+        PreparedStatement newHandle(Connection connectionHandle) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandle(this, connectionHandle));
+        }
+
+        void returnToCache() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                statement.close();
+                return;
+            }
+            try {
+                ResultSet open = statement.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                // Settings and batches of this borrower must not carry over to the next one
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.setMaxRows(0);
+                statement.setQueryTimeout(0);
+                statement.setFetchSize(defaultFetchSize);
+            } catch (SQLException e) {
+                // Closed statements are replaced on their next use
+                statement.close();
+                throw e;
+            }
+        }
+    }
+
+    private static class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection connectionHandle;
+        private boolean handleClosed = false;
+
+        StatementHandle(CachedStatement cached, Connection connectionHandle) {
+            this.cached = cached;
+            this.connectionHandle = connectionHandle;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        cached.returnToCache();
+                    }
+                    return null;
+                case "isClosed":
+                    return handleClosed || cached.statement.isClosed();
+                case "getConnection":
+                    return connectionHandle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.statement + "]";
+                default:
+                    if (handleClosed) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+                    try {
+                        return method.invoke(cached.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Ignore, the statement is being discarded anyway
+        }
+    }
+
+    // Each borrow gets its own handle so a stale reference can't close someone else's connection
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean handleClosed = false;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return handleClosed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + "]";
+                default:
+                    if (handleClosed) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        return pc.prepareCached((String) args[0], (Connection) proxy);
+                    }
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
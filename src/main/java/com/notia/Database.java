@@ -1,11 +1,31 @@
 package com.notia;
 
+import dev.langchain4j.data.document.Metadata;
+
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 public class Database {
 
+    public enum SearchMode {
+        SUBSTRING, // LIKE '%text%' over title, content, tags and categories
+        FULLTEXT   // Relevance-ranked MATCH ... AGAINST with boolean/phrase syntax
+    }
+
+    public enum NoteOrder {
+        ID,        // Oldest first, keyset on id
+        UPDATED_ON // Most recently updated first, keyset on (updated_on, id)
+    }
+
     // MySQL connection settings - customize these via environment variables or config
     private static final String DB_HOST = System.getenv().getOrDefault("MYSQL_HOST", "localhost");
     private static final String DB_PORT = System.getenv().getOrDefault("MYSQL_PORT", "3306");
@@ -14,8 +34,39 @@ public class Database {
     private static final String DB_PASSWORD = System.getenv().getOrDefault("MYSQL_PASSWORD", "");
     
     private static final String DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + 
-                                        "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&characterEncoding=UTF-8";
+                                        "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&characterEncoding=UTF-8" +
+                                        "&useServerPrepStmts=true";
+
+    // Connection pool settings
+    private static final int POOL_MAX_SIZE = Integer.parseInt(System.getenv().getOrDefault("MYSQL_POOL_MAX_SIZE", "10"));
+    private static final long POOL_MAX_WAIT_MS = Long.parseLong(System.getenv().getOrDefault("MYSQL_POOL_MAX_WAIT_MS", "5000"));
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.parseLong(System.getenv().getOrDefault("MYSQL_POOL_IDLE_TIMEOUT_MS", "300000"));
+    private static final long POOL_VALIDATION_INTERVAL_MS = 30_000; // Validate connections idle longer than this
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.parseLong(System.getenv().getOrDefault("MYSQL_POOL_LEAK_THRESHOLD_MS", "60000"));
+    private static final int STATEMENT_CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("MYSQL_STATEMENT_CACHE_SIZE", "64"));
+
+    private static final ConnectionPool pool = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD,
+            POOL_MAX_SIZE, POOL_MAX_WAIT_MS, POOL_IDLE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, POOL_LEAK_THRESHOLD_MS,
+            STATEMENT_CACHE_SIZE);
     private static VectorDB vectorDB;
+    private static EmbeddingQueue embeddingQueue;
+    private static final int EMBEDDING_QUEUE_CAPACITY = 1000;
+    private static final int EMBEDDING_BATCH_SIZE = 16;
+    private static final int EMBEDDING_WORKERS = 2;
+    // Part of the embedding cache key; change it when switching embedding models
+    static final String EMBEDDING_MODEL_NAME = "all-minilm-l6-v2";
+    private static EmbeddingReconciler embeddingReconciler;
+
+    private static final String FULLTEXT_INDEX = "ft_notes_title_content";
+    private static final String FULLTEXT_TITLE_INDEX = "ft_notes_title";
+    private static final String UPDATED_ON_INDEX = "idx_notes_updated_on_id";
+    private static final int MAX_SEARCH_RESULTS = 500;
+    private static volatile boolean fulltextAvailable = false;
+    private static final List<NoteChangeListener> noteChangeListeners = new CopyOnWriteArrayList<>();
+    private static final NoteSearchIndex searchIndex = new NoteSearchIndex();
+    private static final int SEARCH_INDEX_BUILD_ATTEMPTS = 3;
+    // Operators only count at the start of a word, so "follow-up" stays a plain search
+    private static final Pattern BOOLEAN_SYNTAX = Pattern.compile("(^|\\s)[-+<>~(]|[\"*)]");
 
     public static void initialize() {
         // Create database if it doesn't exist
@@ -55,6 +106,34 @@ public class Database {
                     "PRIMARY KEY (note_id, tag_id)," +
                     "FOREIGN KEY (note_id) REFERENCES notes(id) ON DELETE CASCADE," +
                     "FOREIGN KEY (tag_id) REFERENCES tags(id) ON DELETE CASCADE)");
+
+            EmbeddingCache.createTable(stmt);
+            MySqlChatMemoryStore.createTable(stmt);
+
+            // Hash of each chunk stored in the vector database, so an edit only re-embeds the chunks it changed
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS note_chunks (" +
+                    "note_id INT," +
+                    "chunk_index INT," +
+                    "text_hash CHAR(64) NOT NULL," +
+                    "PRIMARY KEY (note_id, chunk_index)," +
+                    "FOREIGN KEY (note_id) REFERENCES notes(id) ON DELETE CASCADE)");
+
+            // Vectors whose delete from the vector database hasn't succeeded yet
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vector_deletions (" +
+                    "embedding_id VARCHAR(64) PRIMARY KEY," +
+                    "requested_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+            // SHA-256 of the text last embedded for the note, to spot notes changed behind our back
+            if (!columnExists(conn, "notes", "embedded_hash")) {
+                stmt.executeUpdate("ALTER TABLE notes ADD COLUMN embedded_hash CHAR(64)");
+            }
+            // Hash of the metadata (title, tags, ...) stored with the note's chunks; NULL makes the reconciler
+            // re-store them, which also backfills chunks written before metadata was stored
+            if (!columnExists(conn, "notes", "embedded_metadata_hash")) {
+                stmt.executeUpdate("ALTER TABLE notes ADD COLUMN embedded_metadata_hash CHAR(64)");
+            }
+
+            migrateIndexes(conn);
             
             // Populate with example notes if database is empty
             populateExampleNotes();
@@ -64,8 +143,130 @@ public class Database {
 
         // Initialize VectorDB connection for RAG functionality
         initializeVectorDB();
+
+        // Searches go to SQL until the in-memory index has been built
+        rebuildSearchIndexAsync();
+    }
+
+    private static void rebuildSearchIndexAsync() {
+        searchIndex.invalidate();
+        Thread builder = new Thread(Database::rebuildSearchIndex, "notia-search-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private static synchronized void rebuildSearchIndex() {
+        long start = System.currentTimeMillis();
+        for (int attempt = 0; attempt < SEARCH_INDEX_BUILD_ATTEMPTS; attempt++) {
+            long modCount = searchIndex.modCount();
+            List<NoteSearchIndex.IndexedNote> indexed = loadNotesForIndex();
+            if (indexed == null) {
+                return;
+            }
+            if (searchIndex.rebuild(indexed, modCount)) {
+                System.out.println("Search index ready: " + indexed.size() + " notes in " +
+                        (System.currentTimeMillis() - start) + "ms");
+                return;
+            }
+            // A note changed while we were loading; take a fresh snapshot
+        }
+        System.err.println("Warning: Notes kept changing while building the search index, using SQL search");
+    }
+
+    private static List<NoteSearchIndex.IndexedNote> loadNotesForIndex() {
+        Map<Integer, StringBuilder> labels = new HashMap<>();
+        String labelSql = "SELECT nt.note_id, t.name FROM note_tags nt JOIN tags t ON t.id = nt.tag_id " +
+                          "UNION ALL " +
+                          "SELECT nc.note_id, c.name FROM note_categories nc JOIN categories c ON c.id = nc.category_id";
+        String notesSql = "SELECT id, title, content FROM notes";
+        List<NoteSearchIndex.IndexedNote> indexed = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(labelSql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    labels.computeIfAbsent(rs.getInt(1), k -> new StringBuilder()).append(rs.getString(2)).append(' ');
+                }
+            }
+            // Stream rows instead of buffering the whole notes table in the driver
+            try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = stmt.executeQuery(notesSql)) {
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        StringBuilder noteLabels = labels.get(id);
+                        indexed.add(new NoteSearchIndex.IndexedNote(id, rs.getString("title"), rs.getString("content"),
+                                noteLabels == null ? "" : noteLabels.toString()));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Could not build search index: " + e.getMessage());
+            return null;
+        }
+        return indexed;
+    }
+
+    private static void refreshSearchLabels(int noteId) {
+        StringBuilder labels = new StringBuilder();
+        for (Tag tag : getTagsForNote(noteId)) {
+            labels.append(tag.getName()).append(' ');
+        }
+        for (Category category : getCategoriesForNote(noteId)) {
+            labels.append(category.getName()).append(' ');
+        }
+        searchIndex.setLabels(noteId, labels.toString());
     }
     
+    private static void migrateIndexes(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            // Lets getNotesPage(..., UPDATED_ON) seek instead of sorting the whole table
+            if (!indexExists(conn, "notes", UPDATED_ON_INDEX)) {
+                stmt.executeUpdate("CREATE INDEX " + UPDATED_ON_INDEX + " ON notes (updated_on, id)");
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Could not create notes(updated_on, id) index: " + e.getMessage());
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            // FULLTEXT over title+content for the body match, and over title alone so title hits rank higher
+            if (!indexExists(conn, "notes", FULLTEXT_INDEX)) {
+                System.out.println("Building full-text search index on notes (one-time migration)...");
+                stmt.executeUpdate("ALTER TABLE notes ADD FULLTEXT INDEX " + FULLTEXT_INDEX + " (title, content)");
+            }
+            if (!indexExists(conn, "notes", FULLTEXT_TITLE_INDEX)) {
+                stmt.executeUpdate("ALTER TABLE notes ADD FULLTEXT INDEX " + FULLTEXT_TITLE_INDEX + " (title)");
+            }
+            fulltextAvailable = true;
+        } catch (SQLException e) {
+            System.err.println("Warning: Could not create full-text index, falling back to substring search: " + e.getMessage());
+            fulltextAvailable = false;
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.columns " +
+                     "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String indexName) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.statistics " +
+                     "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, indexName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
     private static void createDatabaseIfNotExists() {
         String rootUrl = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + 
                         "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
@@ -259,15 +460,91 @@ public class Database {
 
     private static void initializeVectorDB() {
         try {
-            vectorDB = new VectorDB("http://[::1]:8000", "notia-notes-collection");
+            vectorDB = VectorDB.fromEnvironment();
+            if (vectorDB.isNewIndex()) {
+                // e.g. first run on the local backend: whatever is_embedded says, the vectors are elsewhere
+                markAllNotesUnembedded();
+            }
+            vectorDB.setEmbeddingCache(new EmbeddingCache(EMBEDDING_MODEL_NAME));
+            embeddingQueue = new EmbeddingQueue(vectorDB, EMBEDDING_QUEUE_CAPACITY, EMBEDDING_BATCH_SIZE, EMBEDDING_WORKERS);
+            // Catches up on notes that were never embedded (e.g. Chroma was down) and failed deletes
+            embeddingReconciler = new EmbeddingReconciler(vectorDB, embeddingQueue);
+            embeddingReconciler.start();
         } catch (Exception e) {
             System.err.println("Warning: Could not connect to ChromaDB. Vector search will be disabled.");
             System.err.println("Make sure ChromaDB is running on http://[::1]:8000");
         }
     }
 
+    /**
+     * Changes whenever anything chat retrieval reads changes: vectors written through
+     * {@link #getVectorDB()} or notes and labels in the keyword index.
+     */
+    static long getRetrievalGeneration() {
+        VectorDB db = vectorDB;
+        return (db == null ? 0 : db.getGeneration()) + searchIndex.modCount();
+    }
+
+    // Null until initialize() has run or if the vector database could not be set up
+    public static VectorDB getVectorDB() {
+        return vectorDB;
+    }
+
+    private static void markAllNotesUnembedded() {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
+            int count = stmt.executeUpdate("UPDATE notes SET is_embedded = FALSE WHERE is_embedded = TRUE");
+            // None of the recorded chunks are in the new index either
+            stmt.executeUpdate("DELETE FROM note_chunks");
+            if (count > 0) {
+                System.out.println("Vector index is new, " + count + " note(s) will be re-embedded");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        return pool.getConnection();
+    }
+
+    public static void addNoteChangeListener(NoteChangeListener listener) {
+        noteChangeListeners.add(listener);
+    }
+
+    public static void removeNoteChangeListener(NoteChangeListener listener) {
+        noteChangeListeners.remove(listener);
+    }
+
+    private static void fireNoteChanged(NoteChangeEvent.Type type, Note note) {
+        NoteChangeEvent event = new NoteChangeEvent(type, note);
+        for (NoteChangeListener listener : noteChangeListeners) {
+            try {
+                listener.onNoteChanged(event);
+            } catch (Exception e) {
+                System.err.println("Warning: Note change listener failed for " + event + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    public static void shutdown() {
+        if (embeddingReconciler != null) {
+            embeddingReconciler.shutdown();
+        }
+        if (embeddingQueue != null) {
+            embeddingQueue.shutdown();
+        }
+        if (vectorDB != null) {
+            System.out.println("Closing vector database: " + EmbeddingService.get().queryModel().getStats());
+            vectorDB.close();
+        }
+        System.out.println("Closing database connections: " + pool.getStats());
+        pool.close();
     }
 
     public static List<Note> getAllNotes() {
@@ -286,6 +563,54 @@ public class Database {
         return notes;
     }
 
+    /**
+     * Returns the page of notes that follows {@code after} in the given order, or the first
+     * page when {@code after} is null. Pages are keyset-based, so fetching page N costs the
+     * same as fetching page 1. Notes carry id, title and updated_on only.
+     */
+    public static List<Note> getNotesPage(Note after, int pageSize, NoteOrder order) {
+        List<Note> notes = new ArrayList<>();
+        String sql;
+        if (order == NoteOrder.UPDATED_ON) {
+            sql = after == null
+                    ? "SELECT id, title, updated_on FROM notes ORDER BY updated_on DESC, id DESC LIMIT ?"
+                    : "SELECT id, title, updated_on FROM notes " +
+                      "WHERE updated_on < ? OR (updated_on = ? AND id < ?) " +
+                      // NULL dates sort last in DESC order
+                      "OR (updated_on IS NULL AND (? IS NOT NULL OR id < ?)) " +
+                      "ORDER BY updated_on DESC, id DESC LIMIT ?";
+        } else {
+            sql = after == null
+                    ? "SELECT id, title, updated_on FROM notes ORDER BY id LIMIT ?"
+                    : "SELECT id, title, updated_on FROM notes WHERE id > ? ORDER BY id LIMIT ?";
+        }
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                if (order == NoteOrder.UPDATED_ON) {
+                    pstmt.setDate(i++, after.getUpdatedOn());
+                    pstmt.setDate(i++, after.getUpdatedOn());
+                    pstmt.setInt(i++, after.getId());
+                    pstmt.setDate(i++, after.getUpdatedOn());
+                    pstmt.setInt(i++, after.getId());
+                } else {
+                    pstmt.setInt(i++, after.getId());
+                }
+            }
+            pstmt.setInt(i, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    notes.add(new Note(rs.getInt("id"), rs.getString("title"), null,
+                            null, rs.getDate("updated_on"), false, false, 0));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return notes;
+    }
+
     public static Note getNoteById(int id) {
         String sql = "SELECT * FROM notes WHERE id = ?";
         try (Connection conn = getConnection();
@@ -318,10 +643,11 @@ public class Database {
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
+            java.sql.Date today = new java.sql.Date(System.currentTimeMillis());
             pstmt.setString(1, note.getTitle());
             pstmt.setString(2, note.getContent());
-            pstmt.setDate(3, new java.sql.Date(System.currentTimeMillis()));
-            pstmt.setDate(4, new java.sql.Date(System.currentTimeMillis()));
+            pstmt.setDate(3, today);
+            pstmt.setDate(4, today);
             pstmt.setBoolean(5, note.isEmbedded());
             pstmt.setBoolean(6, note.isSubnote());
             if (note.getParentId() == 0) {
@@ -335,6 +661,9 @@ public class Database {
                 try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
                         int noteId = generatedKeys.getInt(1);
+                        searchIndex.putNote(noteId, note.getTitle(), note.getContent());
+                        fireNoteChanged(NoteChangeEvent.Type.INSERTED, new Note(noteId, note.getTitle(), note.getContent(),
+                                today, today, note.isEmbedded(), note.isSubnote(), note.getParentId()));
                         // Store note in vector database for RAG
                         storeNoteInVectorDB(noteId, note);
                         return noteId;
@@ -348,17 +677,31 @@ public class Database {
     }
 
     private static int updateNote(Note note) {
-        String sql = "UPDATE notes SET title = ?, content = ?, updated_on = ? WHERE id = ?";
+        // Unless the embedded text is unchanged, the stored vector is stale until the embedding queue catches up
+        String sql = "UPDATE notes SET title = ?, content = ?, updated_on = ?, is_embedded = ? WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
+            String noteText = buildEmbeddingText(note.getId(), note.getTitle(), note.getContent());
+            boolean vectorCurrent = noteText != null
+                    && isEmbeddedAs(conn, note.getId(), EmbeddingQueue.textHash(noteText))
+                    // A queued older version would overwrite the vector, so it has to be replaced
+                    && (embeddingQueue == null || !embeddingQueue.isPending(note.getId()));
+
+            java.sql.Date today = new java.sql.Date(System.currentTimeMillis());
             pstmt.setString(1, note.getTitle());
             pstmt.setString(2, note.getContent());
-            pstmt.setDate(3, new java.sql.Date(System.currentTimeMillis()));
-            pstmt.setInt(4, note.getId());
+            pstmt.setDate(3, today);
+            pstmt.setBoolean(4, vectorCurrent);
+            pstmt.setInt(5, note.getId());
             pstmt.executeUpdate();
-            // Update note in vector database for RAG
-            storeNoteInVectorDB(note.getId(), note);
+            searchIndex.putNote(note.getId(), note.getTitle(), note.getContent());
+            fireNoteChanged(NoteChangeEvent.Type.UPDATED, new Note(note.getId(), note.getTitle(), note.getContent(),
+                    note.getCreatedOn(), today, note.isEmbedded(), note.isSubnote(), note.getParentId()));
+            // Update note in vector database for RAG; saving unchanged text (e.g. twice in a row) costs nothing
+            if (!vectorCurrent) {
+                storeNoteInVectorDB(note.getId(), note);
+            }
             return note.getId();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -367,7 +710,7 @@ public class Database {
     }
 
     private static void storeNoteInVectorDB(int noteId, Note note) {
-        if (vectorDB == null) {
+        if (vectorDB == null || embeddingQueue == null) {
             System.err.println("Warning: VectorDB not initialized");
             return;
         }
@@ -387,18 +730,35 @@ public class Database {
         }
         
         try {
-            String title = (note.getTitle() != null && !note.getTitle().trim().isEmpty()) 
-                          ? note.getTitle() : "Untitled";
-            String noteText = "Note ID: " + noteId + "\nTitle: " + title + "\n\n" + note.getContent();
-            String embeddingId = "note_" + noteId;
-            vectorDB.addTextWithId(noteText, embeddingId);
-            System.out.println("Successfully stored note " + noteId + " in vector database");
+            String noteText = buildEmbeddingText(noteId, note.getTitle(), note.getContent());
+            // Embedding runs in the background; the note is marked is_embedded once it's stored
+            embeddingQueue.enqueue(noteId, noteText);
         } catch (Exception e) {
             System.err.println("Warning: Failed to store note " + noteId + " in vector database: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private static boolean isEmbeddedAs(Connection conn, int noteId, String textHash) throws SQLException {
+        String sql = "SELECT 1 FROM notes WHERE id = ? AND is_embedded = TRUE AND embedded_hash = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, noteId);
+            pstmt.setString(2, textHash);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // The exact text stored in the vector database for a note, or null if it has nothing to embed
+    static String buildEmbeddingText(int noteId, String title, String content) {
+        if (content == null || content.trim().isEmpty()) {
+            return null;
+        }
+        String safeTitle = (title != null && !title.trim().isEmpty()) ? title : "Untitled";
+        return "Note ID: " + noteId + "\nTitle: " + safeTitle + "\n\n" + content;
+    }
+
     public static void deleteNote(int id) {
         try (Connection conn = getConnection()) {
             // Start transaction
@@ -418,6 +778,21 @@ public class Database {
                     pstmt.executeUpdate();
                 }
                 
+                // Remember the vectors until they're really gone, so a failed delete can be retried.
+                // Recorded before the note row goes, since that cascades to its note_chunks rows
+                String tombstoneSql = "INSERT IGNORE INTO vector_deletions(embedding_id) VALUES(?)";
+                try (PreparedStatement pstmt = conn.prepareStatement(tombstoneSql)) {
+                    pstmt.setString(1, NoteChunker.noteEmbeddingId(id));
+                    pstmt.executeUpdate();
+                }
+                String chunkTombstoneSql = "INSERT IGNORE INTO vector_deletions(embedding_id) " +
+                                           "SELECT CONCAT(?, '#', chunk_index) FROM note_chunks WHERE note_id = ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(chunkTombstoneSql)) {
+                    pstmt.setString(1, NoteChunker.noteEmbeddingId(id));
+                    pstmt.setInt(2, id);
+                    pstmt.executeUpdate();
+                }
+
                 // Delete the note itself
                 String deleteNoteSql = "DELETE FROM notes WHERE id = ?";
                 try (PreparedStatement pstmt = conn.prepareStatement(deleteNoteSql)) {
@@ -427,6 +802,8 @@ public class Database {
                 
                 // Commit transaction
                 conn.commit();
+                searchIndex.removeNote(id);
+                fireNoteChanged(NoteChangeEvent.Type.DELETED, new Note(id, null));
                 
                 // Delete note from vector database
                 deleteNoteFromVectorDB(id);
@@ -440,15 +817,381 @@ public class Database {
         }
     }
     
-    private static void deleteNoteFromVectorDB(int noteId) {
+    /**
+     * Records that the given notes (id -> hash of the embedded text) are stored in the
+     * vector database. Returns the ids that no longer exist in the notes table.
+     */
+    static List<Integer> markNotesEmbedded(Map<Integer, String> embeddedHashes) {
+        List<Integer> missing = new ArrayList<>();
+        if (embeddedHashes.isEmpty()) {
+            return missing;
+        }
+        String sql = "UPDATE notes SET is_embedded = TRUE, embedded_hash = ? WHERE id = ?";
+        List<Integer> noteIds = new ArrayList<>(embeddedHashes.keySet());
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int noteId : noteIds) {
+                pstmt.setString(1, embeddedHashes.get(noteId));
+                pstmt.setInt(2, noteId);
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    missing.add(noteIds.get(i));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return missing;
+    }
+
+    static void deleteNoteFromVectorDB(int noteId) {
+        deleteNoteFromVectorDB(noteId, List.of());
+    }
+
+    /**
+     * Removes the vectors tombstoned for a deleted note, plus {@code extraIds} (chunks written
+     * after the tombstones were recorded).
+     */
+    static void deleteNoteFromVectorDB(int noteId, Collection<String> extraIds) {
+        if (embeddingQueue != null) {
+            embeddingQueue.cancel(noteId);
+        }
         if (vectorDB != null) {
-            try {
-                String embeddingId = "note_" + noteId;
-                vectorDB.removeById(embeddingId);
+            List<String> tombstoned = getVectorDeletionsForNote(noteId);
+            Set<String> embeddingIds = new LinkedHashSet<>(tombstoned);
+            embeddingIds.addAll(extraIds);
+            if (embeddingIds.isEmpty() || vectorDB.removeAll(new ArrayList<>(embeddingIds))) {
+                clearVectorDeletions(tombstoned);
                 System.out.println("Deleted note " + noteId + " from vector database");
-            } catch (Exception e) {
-                System.err.println("Warning: Failed to delete note from vector database: " + e.getMessage());
+            } else {
+                System.err.println("Warning: Failed to delete note " + noteId + " from vector database, will retry later");
+            }
+        }
+    }
+
+    /**
+     * Reads the next {@code limit} notes after {@code afterId} (by id) with the text that
+     * should be in the vector database and whether what's stored there is current.
+     */
+    static List<EmbeddingState> getEmbeddingStates(int afterId, int limit) {
+        List<EmbeddingState> states = new ArrayList<>();
+        String sql = "SELECT id, title, content, is_embedded, embedded_hash, embedded_metadata_hash " +
+                     "FROM notes WHERE id > ? ORDER BY id LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String text = buildEmbeddingText(id, rs.getString("title"), rs.getString("content"));
+                    boolean upToDate = text == null || (rs.getBoolean("is_embedded")
+                            && EmbeddingQueue.textHash(text).equals(rs.getString("embedded_hash"))
+                            && rs.getString("embedded_metadata_hash") != null);
+                    states.add(new EmbeddingState(id, text, upToDate));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return states;
+    }
+
+    /**
+     * The id the next inserted note will get, or 0 if it can't be read or notes with ids
+     * above {@code afterId} exist (so a failed page read never makes live notes look deleted).
+     */
+    static int getNextNoteId(int afterId) {
+        String sql = "SELECT AUTO_INCREMENT FROM information_schema.tables " +
+                     "WHERE table_schema = DATABASE() AND table_name = 'notes' " +
+                     "AND NOT EXISTS (SELECT 1 FROM notes WHERE id > ?)";
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            // MySQL 8 otherwise serves AUTO_INCREMENT from table statistics cached for up to a day.
+            // The connection goes back to the pool, so the previous expiry is restored afterwards.
+            long previousExpiry;
+            try (ResultSet rs = stmt.executeQuery("SELECT @@SESSION.information_schema_stats_expiry")) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                previousExpiry = rs.getLong(1);
+            }
+            stmt.execute("SET SESSION information_schema_stats_expiry = 0");
+            try {
+                pstmt.setInt(1, afterId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt(1);
+                    }
+                }
+            } finally {
+                stmt.execute("SET SESSION information_schema_stats_expiry = " + previousExpiry);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    static class EmbeddingState {
+        final int noteId;
+        final String text;
+        final boolean upToDate;
+
+        EmbeddingState(int noteId, String text, boolean upToDate) {
+            this.noteId = noteId;
+            this.text = text;
+            this.upToDate = upToDate;
+        }
+    }
+
+    private static List<String> getVectorDeletionsForNote(int noteId) {
+        List<String> embeddingIds = new ArrayList<>();
+        String sql = "SELECT embedding_id FROM vector_deletions WHERE embedding_id = ? OR embedding_id LIKE ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, NoteChunker.noteEmbeddingId(noteId));
+            pstmt.setString(2, NoteChunker.noteEmbeddingId(noteId) + "#%");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    embeddingIds.add(rs.getString("embedding_id"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return embeddingIds;
+    }
+
+    /**
+     * Returns the hashes of the chunks stored in the vector database for each note, by chunk index.
+     * Notes without recorded chunks are absent.
+     */
+    static Map<Integer, List<String>> getChunkHashes(Collection<Integer> noteIds) {
+        Map<Integer, List<String>> hashes = new HashMap<>();
+        if (noteIds.isEmpty()) {
+            return hashes;
+        }
+        String sql = "SELECT note_id, text_hash FROM note_chunks WHERE note_id IN (" + placeholders(noteIds.size()) +
+                     ") ORDER BY note_id, chunk_index";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int noteId : noteIds) {
+                pstmt.setInt(index++, noteId);
             }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    hashes.computeIfAbsent(rs.getInt("note_id"), k -> new ArrayList<>()).add(rs.getString("text_hash"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return hashes;
+    }
+
+    /**
+     * Replaces the recorded chunk hashes and metadata hash of the given notes. Notes deleted
+     * in the meantime are skipped.
+     */
+    static void saveChunkHashes(Map<Integer, List<String>> chunkHashes, Map<Integer, String> metadataHashes) {
+        if (chunkHashes.isEmpty()) {
+            return;
+        }
+        String deleteSql = "DELETE FROM note_chunks WHERE note_id = ?";
+        // Inserting through a select on notes skips deleted notes instead of failing the foreign key
+        String insertSql = "INSERT INTO note_chunks(note_id, chunk_index, text_hash) SELECT id, ?, ? FROM notes WHERE id = ?";
+        String metadataSql = "UPDATE notes SET embedded_metadata_hash = ? WHERE id = ?";
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement(deleteSql);
+                 PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement metadata = conn.prepareStatement(metadataSql)) {
+                for (Map.Entry<Integer, List<String>> entry : chunkHashes.entrySet()) {
+                    delete.setInt(1, entry.getKey());
+                    delete.addBatch();
+                    metadata.setString(1, metadataHashes.get(entry.getKey()));
+                    metadata.setInt(2, entry.getKey());
+                    metadata.addBatch();
+                    List<String> hashes = entry.getValue();
+                    for (int i = 0; i < hashes.size(); i++) {
+                        insert.setInt(1, i);
+                        insert.setString(2, hashes.get(i));
+                        insert.setInt(3, entry.getKey());
+                        insert.addBatch();
+                    }
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+                metadata.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static Map<Integer, String> getEmbeddedMetadataHashes(Collection<Integer> noteIds) {
+        Map<Integer, String> hashes = new HashMap<>();
+        if (noteIds.isEmpty()) {
+            return hashes;
+        }
+        String sql = "SELECT id, embedded_metadata_hash FROM notes WHERE embedded_metadata_hash IS NOT NULL AND id IN (" +
+                     placeholders(noteIds.size()) + ")";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int noteId : noteIds) {
+                pstmt.setInt(index++, noteId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    hashes.put(rs.getInt("id"), rs.getString("embedded_metadata_hash"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return hashes;
+    }
+
+    /**
+     * Builds the metadata stored with each chunk of the given notes: id, title, updated_on,
+     * tags and categories (comma-separated, plus one key per tag and category, see
+     * {@link VectorDB#tagFilter}). Deleted notes are absent.
+     */
+    static Map<Integer, Metadata> getVectorMetadata(Collection<Integer> noteIds) {
+        Map<Integer, Metadata> metadata = new HashMap<>();
+        if (noteIds.isEmpty()) {
+            return metadata;
+        }
+        String in = placeholders(noteIds.size());
+        String notesSql = "SELECT id, title, updated_on FROM notes WHERE id IN (" + in + ")";
+        String labelsSql = "SELECT nt.note_id, t.name, 'tag' AS kind FROM note_tags nt JOIN tags t ON t.id = nt.tag_id " +
+                           "WHERE nt.note_id IN (" + in + ") UNION ALL " +
+                           "SELECT nc.note_id, c.name, 'category' AS kind FROM note_categories nc " +
+                           "JOIN categories c ON c.id = nc.category_id WHERE nc.note_id IN (" + in + ") " +
+                           "ORDER BY 1, 3, 2";
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(notesSql)) {
+                int index = 1;
+                for (int noteId : noteIds) {
+                    pstmt.setInt(index++, noteId);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Metadata noteMetadata = new Metadata();
+                        noteMetadata.put(VectorDB.METADATA_NOTE_ID, rs.getInt("id"));
+                        String title = rs.getString("title");
+                        noteMetadata.put(VectorDB.METADATA_TITLE, title == null || title.trim().isEmpty() ? "Untitled" : title);
+                        if (rs.getDate("updated_on") != null) {
+                            noteMetadata.put(VectorDB.METADATA_UPDATED_ON, rs.getDate("updated_on").toString());
+                        }
+                        metadata.put(rs.getInt("id"), noteMetadata);
+                    }
+                }
+            }
+            Map<Integer, List<String>> tags = new HashMap<>();
+            Map<Integer, List<String>> categories = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(labelsSql)) {
+                int index = 1;
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int noteId : noteIds) {
+                        pstmt.setInt(index++, noteId);
+                    }
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Metadata noteMetadata = metadata.get(rs.getInt("note_id"));
+                        if (noteMetadata == null) {
+                            continue;
+                        }
+                        String name = rs.getString("name");
+                        if ("tag".equals(rs.getString("kind"))) {
+                            tags.computeIfAbsent(rs.getInt("note_id"), k -> new ArrayList<>()).add(name);
+                            noteMetadata.put(VectorDB.tagKey(name), 1);
+                        } else {
+                            categories.computeIfAbsent(rs.getInt("note_id"), k -> new ArrayList<>()).add(name);
+                            noteMetadata.put(VectorDB.categoryKey(name), 1);
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Metadata> entry : metadata.entrySet()) {
+                entry.getValue().put(VectorDB.METADATA_TAGS, String.join(", ", tags.getOrDefault(entry.getKey(), List.of())));
+                entry.getValue().put(VectorDB.METADATA_CATEGORIES,
+                        String.join(", ", categories.getOrDefault(entry.getKey(), List.of())));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return metadata;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+
+    // Re-stores the note's chunks with its current metadata (the vectors themselves come from the cache)
+    private static void refreshVectorMetadata(int noteId) {
+        if (embeddingQueue == null) {
+            return;
+        }
+        Note note = getNoteById(noteId);
+        if (note != null) {
+            storeNoteInVectorDB(noteId, note);
+        }
+    }
+
+    // Makes the reconciler re-store the metadata of every note with the given tag or category
+    private static void invalidateVectorMetadata(Connection conn, String labelTable, String labelColumn, int labelId)
+            throws SQLException {
+        String sql = "UPDATE notes SET embedded_metadata_hash = NULL WHERE id IN " +
+                     "(SELECT note_id FROM " + labelTable + " WHERE " + labelColumn + " = ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, labelId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    static List<String> getPendingVectorDeletions() {
+        List<String> embeddingIds = new ArrayList<>();
+        String sql = "SELECT embedding_id FROM vector_deletions";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                embeddingIds.add(rs.getString("embedding_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return embeddingIds;
+    }
+
+    static void clearVectorDeletions(List<String> embeddingIds) {
+        String sql = "DELETE FROM vector_deletions WHERE embedding_id = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (String embeddingId : embeddingIds) {
+                pstmt.setString(1, embeddingId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
     }
 
@@ -491,9 +1234,11 @@ public class Database {
         String sql = "UPDATE categories SET name = ? WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            invalidateVectorMetadata(conn, "note_categories", "category_id", category.getId());
             pstmt.setString(1, category.getName());
             pstmt.setInt(2, category.getId());
             pstmt.executeUpdate();
+            rebuildSearchIndexAsync();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -503,8 +1248,11 @@ public class Database {
         String sql = "DELETE FROM categories WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            // Before the delete cascades to note_categories
+            invalidateVectorMetadata(conn, "note_categories", "category_id", id);
             pstmt.setInt(1, id);
             pstmt.executeUpdate();
+            rebuildSearchIndexAsync();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -565,9 +1313,11 @@ public class Database {
         String sql = "UPDATE tags SET name = ? WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            invalidateVectorMetadata(conn, "note_tags", "tag_id", tag.getId());
             pstmt.setString(1, tag.getName());
             pstmt.setInt(2, tag.getId());
             pstmt.executeUpdate();
+            rebuildSearchIndexAsync();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -577,8 +1327,11 @@ public class Database {
         String sql = "DELETE FROM tags WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            // Before the delete cascades to note_tags
+            invalidateVectorMetadata(conn, "note_tags", "tag_id", id);
             pstmt.setInt(1, id);
             pstmt.executeUpdate();
+            rebuildSearchIndexAsync();
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -608,6 +1361,8 @@ public class Database {
             pstmt.setInt(1, noteId);
             pstmt.setInt(2, categoryId);
             pstmt.executeUpdate();
+            refreshSearchLabels(noteId);
+            refreshVectorMetadata(noteId);
         } catch (SQLException e) {
             // Ignore unique constraint violation
         }
@@ -620,6 +1375,8 @@ public class Database {
             pstmt.setInt(1, noteId);
             pstmt.setInt(2, categoryId);
             pstmt.executeUpdate();
+            refreshSearchLabels(noteId);
+            refreshVectorMetadata(noteId);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -651,6 +1408,8 @@ public class Database {
             pstmt.setInt(1, noteId);
             pstmt.setInt(2, tagId);
             pstmt.executeUpdate();
+            refreshSearchLabels(noteId);
+            refreshVectorMetadata(noteId);
         } catch (SQLException e) {
             // Ignore unique constraint violation
         }
@@ -663,6 +1422,8 @@ public class Database {
             pstmt.setInt(1, noteId);
             pstmt.setInt(2, tagId);
             pstmt.executeUpdate();
+            refreshSearchLabels(noteId);
+            refreshVectorMetadata(noteId);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -688,6 +1449,135 @@ public class Database {
     }
 
     public static List<Note> searchNotes(String searchText) {
+        // Boolean/phrase queries need MySQL; everything else is answered from memory once the index is warm
+        if (searchIndex.isReady() && !BOOLEAN_SYNTAX.matcher(searchText).find()) {
+            return searchIndex.search(searchText, MAX_SEARCH_RESULTS);
+        }
+        return searchNotes(searchText, fulltextAvailable ? SearchMode.FULLTEXT : SearchMode.SUBSTRING);
+    }
+
+    public static List<Note> searchNotes(String searchText, SearchMode mode) {
+        if (mode == SearchMode.FULLTEXT && fulltextAvailable) {
+            try {
+                return searchNotesFulltext(searchText);
+            } catch (SQLException e) {
+                // Usually a malformed boolean expression (e.g. an unbalanced quote) - degrade gracefully
+                System.err.println("Warning: Full-text search failed, using substring search: " + e.getMessage());
+            }
+        }
+        return searchNotesSubstring(searchText);
+    }
+
+    /**
+     * Keyword relevance ranking for retrieval: BM25 from the in-memory index, or MySQL's
+     * natural-language full-text ranking while the index is still being built.
+     */
+    static List<NoteSearchIndex.ScoredNote> rankNotes(String query, int limit) {
+        if (searchIndex.isReady()) {
+            return searchIndex.rank(query, limit);
+        }
+        List<NoteSearchIndex.ScoredNote> ranked = new ArrayList<>();
+        if (!fulltextAvailable) {
+            return ranked;
+        }
+        String sql = "SELECT id, title, MATCH(title, content) AGAINST (? IN NATURAL LANGUAGE MODE) AS relevance " +
+                     "FROM notes WHERE MATCH(title, content) AGAINST (? IN NATURAL LANGUAGE MODE) " +
+                     "ORDER BY relevance DESC LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, query);
+            pstmt.setString(2, query);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ranked.add(new NoteSearchIndex.ScoredNote(new Note(rs.getInt("id"), rs.getString("title")),
+                            rs.getDouble("relevance")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Keyword ranking failed: " + e.getMessage());
+        }
+        return ranked;
+    }
+
+    private static List<Note> searchNotesFulltext(String searchText) throws SQLException {
+        if (searchText.trim().isEmpty()) {
+            // The name prefix pattern would be "%" and match every labelled note
+            return new ArrayList<>();
+        }
+        String booleanQuery = toBooleanQuery(searchText);
+        // Keyed by id so tag/category matches don't duplicate full-text hits; insertion order keeps the ranking
+        Map<Integer, Note> results = new LinkedHashMap<>();
+
+        if (!booleanQuery.isEmpty()) {
+            String sql = "SELECT id, title, " +
+                         "MATCH(title) AGAINST (? IN BOOLEAN MODE) * 2 + MATCH(title, content) AGAINST (? IN BOOLEAN MODE) AS relevance " +
+                         "FROM notes WHERE MATCH(title, content) AGAINST (? IN BOOLEAN MODE) " +
+                         "ORDER BY relevance DESC LIMIT ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, booleanQuery);
+                pstmt.setString(2, booleanQuery);
+                pstmt.setString(3, booleanQuery);
+                pstmt.setInt(4, MAX_SEARCH_RESULTS);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        results.put(rs.getInt("id"), new Note(rs.getInt("id"), rs.getString("title")));
+                    }
+                }
+            }
+        }
+
+        // Tag and category names are matched by prefix so the UNIQUE(name) indexes can be used
+        String namePattern = escapeLike(searchText.trim()) + "%";
+        String sql = "SELECT n.id, n.title FROM tags t " +
+                     "JOIN note_tags nt ON nt.tag_id = t.id " +
+                     "JOIN notes n ON n.id = nt.note_id " +
+                     "WHERE t.name LIKE ? " +
+                     "UNION " +
+                     "SELECT n.id, n.title FROM categories c " +
+                     "JOIN note_categories nc ON nc.category_id = c.id " +
+                     "JOIN notes n ON n.id = nc.note_id " +
+                     "WHERE c.name LIKE ? " +
+                     "LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, namePattern);
+            pstmt.setString(2, namePattern);
+            pstmt.setInt(3, MAX_SEARCH_RESULTS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    results.putIfAbsent(rs.getInt("id"), new Note(rs.getInt("id"), rs.getString("title")));
+                }
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    // Plain input becomes "+word1* +word2*" (all words, prefix match) so search-as-you-type works.
+    // Input that already uses boolean operators or quoted phrases is passed through untouched.
+    static String toBooleanQuery(String searchText) {
+        String text = searchText.trim();
+        if (BOOLEAN_SYNTAX.matcher(text).find()) {
+            return text;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}_]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append('+').append(word).append('*');
+            }
+        }
+        return query.toString();
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static List<Note> searchNotesSubstring(String searchText) {
         List<Note> notes = new ArrayList<>();
         String sql = "SELECT DISTINCT n.id, n.title FROM notes n " +
                      "LEFT JOIN note_categories nc ON n.id = nc.note_id " +
@@ -0,0 +1,141 @@
+package com.notia;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of embeddings in the embedding_cache MySQL table, keyed by the
+ * SHA-256 of the exact embedded text and the model that produced the vector.
+ *
+ * Text that was embedded once (an unchanged note saved again, a note reverted to
+ * an earlier version, a re-index after wiping Chroma) is then never run through
+ * the model again; {@link VectorDB} only has to upsert the cached vector.
+ */
+public class EmbeddingCache {
+
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    private final String modelName;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EmbeddingCache(String modelName) {
+        this.modelName = modelName;
+    }
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS embedding_cache (" +
+                "text_hash CHAR(64) NOT NULL," +
+                "model VARCHAR(64) NOT NULL," +
+                "vector BLOB NOT NULL," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "PRIMARY KEY (text_hash, model)," +
+                "INDEX idx_embedding_cache_created_at (created_at))");
+    }
+
+    /**
+     * Returns the cached embeddings for the given text hashes; missing hashes are absent
+     * from the map. A failing lookup is treated as all misses.
+     */
+    public Map<String, Embedding> getAll(Collection<String> textHashes) {
+        Map<String, Embedding> found = new HashMap<>();
+        List<String> hashes = new ArrayList<>(textHashes);
+        try (Connection conn = Database.getConnection()) {
+            for (int from = 0; from < hashes.size(); from += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = hashes.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, hashes.size()));
+                StringBuilder sql = new StringBuilder("SELECT text_hash, vector FROM embedding_cache WHERE model = ? AND text_hash IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    pstmt.setString(1, modelName);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            found.put(rs.getString("text_hash"), Embedding.from(decode(rs.getBytes("vector"))));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Embedding cache lookup failed: " + e.getMessage());
+            found.clear();
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(hashes.size() - found.size());
+        return found;
+    }
+
+    public void putAll(Map<String, Embedding> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT IGNORE INTO embedding_cache(text_hash, model, vector) VALUES(?, ?, ?)";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Embedding> entry : embeddings.entrySet()) {
+                pstmt.setString(1, entry.getKey());
+                pstmt.setString(2, modelName);
+                pstmt.setBytes(3, encode(entry.getValue().vector()));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            // Only costs a re-embed later
+            System.err.println("Warning: Could not write embedding cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops entries older than {@code maxAgeDays} that no stored note chunk currently uses,
+     * so old versions of edited notes don't accumulate forever. Returns the number removed.
+     */
+    public int prune(int maxAgeDays) {
+        String sql = "DELETE FROM embedding_cache WHERE created_at < NOW() - INTERVAL ? DAY " +
+                     "AND text_hash NOT IN (SELECT text_hash FROM note_chunks)";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, maxAgeDays);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Warning: Could not prune embedding cache: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
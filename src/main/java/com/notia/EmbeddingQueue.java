@@ -0,0 +1,308 @@
+package com.notia;
+
+import dev.langchain4j.data.document.Metadata;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background queue that embeds saved notes into the vector database.
+ *
+ * Saves only enqueue a job and return. Jobs are keyed by note id, so saving the
+ * same note several times before it is processed embeds it once, with its latest
+ * text. The worker takes up to {@code batchSize} notes at a time and splits them
+ * into chunks with {@link NoteChunker}. Only chunks whose text differs from what
+ * note_chunks records for that position are embedded (in one embedAll call) and
+ * written (with one addAll), each with its text and the note's metadata; if the
+ * metadata changed (e.g. a tag was added) all of the note's chunks are rewritten.
+ * Chunks past the note's new end are removed. The notes are then marked is_embedded
+ * in MySQL together with a hash of the whole text.
+ *
+ * Several workers may run at once; a note that is being embedded is never
+ * handed to a second worker, so an older version can't overwrite a newer one.
+ */
+public class EmbeddingQueue {
+
+    private static final long LINGER_MILLIS = 250; // Wait briefly so bursts of saves share a batch
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 2000;
+
+    private final VectorDB vectorDB;
+    private final int capacity;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final LinkedHashMap<Integer, String> pending = new LinkedHashMap<>();
+    private final Set<Integer> inFlight = new HashSet<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public EmbeddingQueue(VectorDB vectorDB, int capacity, int batchSize, int workerCount) {
+        this.vectorDB = vectorDB;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::processLoop, "notia-embedding-queue-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    public static String textHash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Order-independent hash of a metadata map
+    static String metadataHash(Metadata metadata) {
+        return textHash(new TreeMap<>(metadata.toMap()).toString());
+    }
+
+    /**
+     * Queues the note text for embedding. Returns false if the queue stayed full for
+     * too long; the note then stays is_embedded = false and can be picked up later.
+     */
+    public boolean enqueue(int noteId, String text) {
+        lock.lock();
+        try {
+            if (pending.containsKey(noteId)) {
+                // Coalesce: replace the queued text but keep the note's place in line
+                pending.put(noteId, text);
+                return true;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(ENQUEUE_TIMEOUT_MILLIS);
+            while (pending.size() >= capacity) {
+                if (remaining <= 0 || !running) {
+                    System.err.println("Warning: Embedding queue full, note " + noteId + " will be embedded later");
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            pending.put(noteId, text);
+            notEmpty.signal();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #enqueue}, but leaves an already queued or in-flight note alone.
+     * Returns false only if the note could not be queued.
+     */
+    public boolean enqueueIfAbsent(int noteId, String text) {
+        lock.lock();
+        try {
+            if (pending.containsKey(noteId) || inFlight.contains(noteId)) {
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return enqueue(noteId, text);
+    }
+
+    // Drops a queued job, e.g. because the note was deleted before it was embedded
+    public void cancel(int noteId) {
+        lock.lock();
+        try {
+            if (pending.remove(noteId) != null) {
+                notFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPending(int noteId) {
+        lock.lock();
+        try {
+            return pending.containsKey(noteId) || inFlight.contains(noteId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void processLoop() {
+        while (running) {
+            Map<Integer, String> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                processBatch(batch);
+            } finally {
+                lock.lock();
+                try {
+                    inFlight.removeAll(batch.keySet());
+                    // Notes skipped because they were in flight may now be taken
+                    notEmpty.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private Map<Integer, String> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (countAvailable() == 0) {
+                notEmpty.await();
+            }
+            // Every enqueue signals; keep waiting until the batch is full or the linger time is up
+            long remaining = TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+            while (countAvailable() < batchSize && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            Map<Integer, String> batch = new LinkedHashMap<>();
+            Iterator<Map.Entry<Integer, String>> it = pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                Map.Entry<Integer, String> entry = it.next();
+                if (!inFlight.contains(entry.getKey())) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+            inFlight.addAll(batch.keySet());
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Pending notes that no other worker is currently embedding; caller holds the lock
+    private int countAvailable() {
+        int available = 0;
+        for (Integer noteId : pending.keySet()) {
+            if (!inFlight.contains(noteId)) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    private void processBatch(Map<Integer, String> batch) {
+        List<Integer> noteIds = new ArrayList<>(batch.keySet());
+        try {
+            long start = System.currentTimeMillis();
+            Map<Integer, List<String>> storedHashes = Database.getChunkHashes(noteIds);
+            Map<Integer, String> storedMetadataHashes = Database.getEmbeddedMetadataHashes(noteIds);
+            Map<Integer, Metadata> noteMetadata = Database.getVectorMetadata(noteIds);
+            Map<Integer, List<String>> chunkHashes = new LinkedHashMap<>();
+            Map<Integer, String> metadataHashes = new HashMap<>();
+            List<String> changedTexts = new ArrayList<>();
+            List<String> changedIds = new ArrayList<>();
+            List<Metadata> changedMetadata = new ArrayList<>();
+            List<String> staleIds = new ArrayList<>();
+            int chunkCount = 0;
+            for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+                int noteId = entry.getKey();
+                List<String> chunks = NoteChunker.split(entry.getValue());
+                List<String> stored = storedHashes.getOrDefault(noteId, List.of());
+                Metadata metadata = noteMetadata.getOrDefault(noteId, new Metadata().put(VectorDB.METADATA_NOTE_ID, noteId));
+                String metadataHash = metadataHash(metadata);
+                boolean metadataChanged = !metadataHash.equals(storedMetadataHashes.get(noteId));
+                metadataHashes.put(noteId, metadataHash);
+                if (stored.isEmpty()) {
+                    // The whole-note vector from before notes were chunked, if there is one
+                    staleIds.add(NoteChunker.noteEmbeddingId(noteId));
+                }
+                List<String> hashes = new ArrayList<>();
+                for (int i = 0; i < chunks.size(); i++) {
+                    String hash = textHash(chunks.get(i));
+                    hashes.add(hash);
+                    if (metadataChanged || i >= stored.size() || !stored.get(i).equals(hash)) {
+                        changedTexts.add(chunks.get(i));
+                        changedIds.add(NoteChunker.chunkId(noteId, i));
+                        changedMetadata.add(metadata.copy().put(VectorDB.METADATA_CHUNK, i));
+                    }
+                }
+                for (int i = chunks.size(); i < stored.size(); i++) {
+                    staleIds.add(NoteChunker.chunkId(noteId, i));
+                }
+                chunkHashes.put(noteId, hashes);
+                chunkCount += chunks.size();
+            }
+            vectorDB.addTextsWithIds(changedTexts, changedIds, changedMetadata);
+            if (!staleIds.isEmpty() && !vectorDB.removeAll(staleIds)) {
+                throw new IllegalStateException("could not remove " + staleIds.size() + " stale chunk(s)");
+            }
+            // The vectors must be on disk before MySQL says they are stored
+            vectorDB.flush();
+            // Recorded for every note in the batch: this is what the vector database now holds
+            Database.saveChunkHashes(chunkHashes, metadataHashes);
+
+            // A note saved again while we were embedding is back in the queue; leave it unmarked
+            Map<Integer, String> done = new LinkedHashMap<>();
+            lock.lock();
+            try {
+                for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+                    if (!pending.containsKey(entry.getKey())) {
+                        done.put(entry.getKey(), textHash(entry.getValue()));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            List<Integer> deleted = Database.markNotesEmbedded(done);
+            if (!deleted.isEmpty()) {
+                // Deleted while we were embedding: don't leave their vectors behind
+                for (int noteId : deleted) {
+                    Database.deleteNoteFromVectorDB(noteId, NoteChunker.chunkIds(noteId, chunkHashes.get(noteId).size()));
+                }
+            }
+            System.out.println("Embedded " + noteIds.size() + " note(s), " + changedIds.size() + " of " + chunkCount +
+                    " chunk(s) changed, in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            // Notes stay is_embedded = false so they can be re-embedded later
+            System.err.println("Warning: Failed to embed notes " + noteIds + ": " + e.getMessage());
+        }
+    }
+}
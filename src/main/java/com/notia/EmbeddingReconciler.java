@@ -0,0 +1,161 @@
+package com.notia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic job that brings the vector database back in line with the notes table.
+ *
+ * Each run retries vector deletes that failed earlier (recorded in vector_deletions)
+ * and walks the notes by id, queueing any note that is not is_embedded or whose
+ * text no longer matches embedded_hash. Re-embedding goes through the
+ * {@link EmbeddingQueue}, so it shares its batching, worker count and backpressure.
+ * Old entries of the {@link EmbeddingCache} that no note uses anymore are pruned.
+ *
+ * The first run after startup also removes the vectors of ids missing from the notes
+ * table, up to its AUTO_INCREMENT: chunks by their note_id metadata, whatever their
+ * index, and whole-note note_&lt;id&gt; vectors from before chunking. That covers deletes
+ * from before tombstones were recorded and chunks no tombstone knew about, e.g. ones
+ * written by an embedding batch that failed before recording its chunk hashes.
+ */
+public class EmbeddingReconciler {
+
+    private static final long INITIAL_DELAY_SECONDS = 30;
+    private static final long PERIOD_SECONDS = 10 * 60;
+    private static final int SCAN_PAGE_SIZE = 500;
+    private static final int REMOVE_BATCH_SIZE = 500;
+    private static final int CACHE_MAX_AGE_DAYS = 30;
+
+    private final VectorDB vectorDB;
+    private final EmbeddingQueue queue;
+    private final ScheduledExecutorService scheduler;
+    private boolean sweepOrphans = true;
+
+    public EmbeddingReconciler(VectorDB vectorDB, EmbeddingQueue queue) {
+        this.vectorDB = vectorDB;
+        this.queue = queue;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notia-embedding-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::runSafely, INITIAL_DELAY_SECONDS, PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            // Never let an exception cancel the schedule
+            System.err.println("Warning: Embedding reconciliation failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void reconcile() {
+        long start = System.currentTimeMillis();
+        int purged = retryDeletions();
+        int swept = 0;
+        boolean sweepFailed = false;
+
+        List<Integer> orphanIds = new ArrayList<>();
+        int queued = 0;
+        int lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Database.EmbeddingState> page = Database.getEmbeddingStates(lastId, SCAN_PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Database.EmbeddingState state : page) {
+                if (sweepOrphans) {
+                    for (int id = lastId + 1; id < state.noteId; id++) {
+                        orphanIds.add(id);
+                    }
+                }
+                lastId = state.noteId;
+                if (state.upToDate) {
+                    continue;
+                }
+                // Never replace text queued by a save, it may be newer than what we just read
+                if (!queue.enqueueIfAbsent(state.noteId, state.text)) {
+                    // Queue is saturated; the remaining notes will be picked up next run
+                    System.out.println("Embedding reconciliation paused at note " + state.noteId + ", queue full");
+                    return;
+                }
+                queued++;
+            }
+            if (orphanIds.size() >= REMOVE_BATCH_SIZE) {
+                swept += orphanIds.size();
+                sweepFailed |= !removeOrphans(orphanIds);
+            }
+        }
+        if (sweepOrphans && !Thread.currentThread().isInterrupted()) {
+            // Ids past the last note, usually the most recently deleted ones
+            int nextId = Database.getNextNoteId(lastId);
+            for (int id = lastId + 1; id < nextId; id++) {
+                orphanIds.add(id);
+                if (orphanIds.size() >= REMOVE_BATCH_SIZE) {
+                    swept += orphanIds.size();
+                    sweepFailed |= !removeOrphans(orphanIds);
+                }
+            }
+        }
+        swept += orphanIds.size();
+        sweepFailed |= !removeOrphans(orphanIds);
+        if (sweepOrphans && !sweepFailed) {
+            sweepOrphans = false;
+        }
+        int pruned = pruneEmbeddingCache();
+
+        if (queued > 0 || purged > 0 || swept > 0 || pruned > 0) {
+            System.out.println("Embedding reconciliation: queued " + queued + " note(s), purged " + purged +
+                    " deleted vector(s), swept " + swept + " missing note id(s), pruned " + pruned +
+                    " cached embedding(s) in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private int pruneEmbeddingCache() {
+        EmbeddingCache cache = vectorDB.getEmbeddingCache();
+        return cache == null ? 0 : cache.prune(CACHE_MAX_AGE_DAYS);
+    }
+
+    private int retryDeletions() {
+        List<String> embeddingIds = Database.getPendingVectorDeletions();
+        if (embeddingIds.isEmpty()) {
+            return 0;
+        }
+        for (int i = 0; i < embeddingIds.size(); i += REMOVE_BATCH_SIZE) {
+            List<String> batch = embeddingIds.subList(i, Math.min(i + REMOVE_BATCH_SIZE, embeddingIds.size()));
+            if (!vectorDB.removeAll(batch)) {
+                return i;
+            }
+            Database.clearVectorDeletions(batch);
+        }
+        return embeddingIds.size();
+    }
+
+    private boolean removeOrphans(List<Integer> noteIds) {
+        if (noteIds.isEmpty()) {
+            return true;
+        }
+        List<String> embeddingIds = new ArrayList<>();
+        for (int noteId : noteIds) {
+            embeddingIds.add(NoteChunker.noteEmbeddingId(noteId));
+        }
+        // Removing ids the store doesn't have is a no-op, so gaps that were never embedded are harmless
+        boolean removed = vectorDB.removeAll(embeddingIds);
+        removed &= vectorDB.removeAll(VectorDB.notesFilter(new ArrayList<>(noteIds)));
+        noteIds.clear();
+        return removed;
+    }
+}
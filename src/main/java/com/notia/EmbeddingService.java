@@ -0,0 +1,146 @@
+package com.notia;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.AbstractInProcessEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxBertBiEncoder;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import dev.langchain4j.model.output.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The process-wide all-MiniLM-L6-v2 embedding model. Storage ({@link VectorDB}) and
+ * retrieval ({@link ChatAssistantFactory}) both embed through {@link #get()}, so the
+ * ONNX session, its thread pools and the 90 MB model are loaded once, and only when the
+ * first text is embedded.
+ *
+ * The session is created here rather than by langchain4j's AllMiniLmL6V2EmbeddingModel
+ * so its intra-op thread count can be set. {@code embedAll} runs its texts in parallel
+ * on a small pool; each text then uses up to the intra-op thread count inside ONNX, so
+ * the two multiplied should not exceed the number of cores.
+ */
+public final class EmbeddingService implements EmbeddingModel {
+
+    private static final String MODEL_RESOURCE = "all-minilm-l6-v2.onnx";
+    private static final String TOKENIZER_RESOURCE = "all-minilm-l6-v2-tokenizer.json";
+    private static final int DIMENSION = 384;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    // Threads ONNX uses inside one inference
+    private static final int INTRA_OP_THREADS = Integer.parseInt(System.getenv().getOrDefault(
+            "NOTIA_EMBEDDING_INTRA_OP_THREADS", "1"));
+    // Texts of one embedAll call embedded at the same time
+    private static final int PARALLELISM = Integer.parseInt(System.getenv().getOrDefault(
+            "NOTIA_EMBEDDING_PARALLELISM", String.valueOf(Math.max(1, CORES / Math.max(1, INTRA_OP_THREADS)))));
+    // In-memory cache of query embeddings (0 disables it)
+    private static final int QUERY_CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("NOTIA_QUERY_CACHE_SIZE", "1000"));
+    private static final long QUERY_CACHE_TTL_MS = Long.parseLong(System.getenv().getOrDefault("NOTIA_QUERY_CACHE_TTL_MS", "3600000"));
+
+    private static final EmbeddingService INSTANCE = new EmbeddingService();
+
+    private final CachingEmbeddingModel queryModel = new CachingEmbeddingModel(this, QUERY_CACHE_SIZE, QUERY_CACHE_TTL_MS);
+    private volatile EmbeddingModel model;
+
+    private EmbeddingService() {
+    }
+
+    public static EmbeddingService get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The model to embed search queries with: this service behind the shared cache of
+     * recent query embeddings.
+     */
+    public CachingEmbeddingModel queryModel() {
+        return queryModel;
+    }
+
+    public boolean isLoaded() {
+        return model != null;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return model().embedAll(textSegments);
+    }
+
+    @Override
+    public int dimension() {
+        return DIMENSION;
+    }
+
+    private EmbeddingModel model() {
+        EmbeddingModel loaded = model;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = model;
+                if (loaded == null) {
+                    loaded = load();
+                    model = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static EmbeddingModel load() {
+        long start = System.currentTimeMillis();
+        ClassLoader loader = EmbeddingService.class.getClassLoader();
+        try (InputStream modelStream = loader.getResourceAsStream(MODEL_RESOURCE);
+             InputStream tokenizerStream = loader.getResourceAsStream(TOKENIZER_RESOURCE)) {
+            if (modelStream == null || tokenizerStream == null) {
+                throw new IllegalStateException("Embedding model not found on the classpath: " + MODEL_RESOURCE);
+            }
+            OrtEnvironment environment = OrtEnvironment.getEnvironment();
+            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+            options.setIntraOpNumThreads(INTRA_OP_THREADS);
+            OrtSession session = environment.createSession(modelStream.readAllBytes(), options);
+            OnnxBertBiEncoder encoder = new OnnxBertBiEncoder(environment, session, tokenizerStream, PoolingMode.MEAN);
+            System.out.println("Embedding model loaded in " + (System.currentTimeMillis() - start) + "ms (" +
+                    PARALLELISM + " parallel, " + INTRA_OP_THREADS + " intra-op threads each)");
+            return new Model(encoder, createExecutor());
+        } catch (IOException | OrtException e) {
+            throw new IllegalStateException("Could not load the embedding model", e);
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(PARALLELISM, r -> {
+            Thread t = new Thread(r, "notia-embedding-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // langchain4j's in-process model around our own encoder; embedAll splits the texts across the executor
+    private static class Model extends AbstractInProcessEmbeddingModel {
+        private final OnnxBertBiEncoder encoder;
+
+        Model(OnnxBertBiEncoder encoder, ExecutorService executor) {
+            super(executor);
+            this.encoder = encoder;
+        }
+
+        @Override
+        protected OnnxBertBiEncoder model() {
+            return encoder;
+        }
+
+        @Override
+        protected Integer knownDimension() {
+            return DIMENSION;
+        }
+    }
+}
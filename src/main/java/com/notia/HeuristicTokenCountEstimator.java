@@ -0,0 +1,64 @@
+package com.notia;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * Estimates token counts without a tokenizer: about four characters per token for
+ * English prose, with a floor of four tokens per three words for short-word text.
+ * Gemini's tokenizer is only available through the API, and budgets only need to be
+ * roughly right, so a local estimate is used instead of a network call per passage.
+ */
+public class HeuristicTokenCountEstimator implements TokenCountEstimator {
+
+    // Role and separator tokens every message costs
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean space = Character.isWhitespace(text.charAt(i));
+            if (!space && !inWord) {
+                words++;
+            }
+            inWord = !space;
+        }
+        return Math.max((text.length() + 3) / 4, (words * 4 + 2) / 3);
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return MESSAGE_OVERHEAD + estimateTokenCountInText(textOf(message));
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+
+    static String textOf(ChatMessage message) {
+        if (message instanceof UserMessage) {
+            UserMessage user = (UserMessage) message;
+            return user.hasSingleText() ? user.singleText() : user.contents().toString();
+        }
+        if (message instanceof AiMessage) {
+            return ((AiMessage) message).text();
+        }
+        if (message instanceof SystemMessage) {
+            return ((SystemMessage) message).text();
+        }
+        return message.toString();
+    }
+}
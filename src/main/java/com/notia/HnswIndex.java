@@ -0,0 +1,387 @@
+package com.notia;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate nearest-neighbour search
+ * by cosine similarity (vectors are expected to be normalized, so this is a dot product).
+ *
+ * Nodes are numbered 0, 1, 2, ... in insertion order; the vectors themselves live in a
+ * {@link VectorSource} owned by the caller. Inserts are serialized, searches take no lock:
+ * neighbour lists are immutable int[]s that are swapped atomically, so a search running
+ * during an insert sees either the old or the new list of a node, never a torn one.
+ *
+ * Tuning: {@code m} is the number of links per node (2 * m on the bottom layer),
+ * {@code efConstruction} the candidate list size while linking a new node, and
+ * {@code efSearch} the candidate list size while searching. Larger values give better
+ * recall at the cost of speed and memory.
+ */
+public class HnswIndex {
+
+    /**
+     * Where the index reads vectors from.
+     */
+    public interface VectorSource {
+        // Similarity between the query and a stored node, higher is closer
+        float similarity(float[] query, int node);
+
+        float[] vector(int node);
+    }
+
+    private static final int[] NO_LINKS = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final VectorSource vectors;
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    private volatile Node[] nodes = new Node[INITIAL_CAPACITY];
+    private volatile int size = 0;
+    private volatile EntryPoint entryPoint = null;
+
+    public HnswIndex(VectorSource vectors, int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2, got " + m);
+        }
+        this.vectors = vectors;
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Links the vector of the next node (number {@link #size()}) into the graph. The caller
+     * must have made {@code vectors} return that vector before calling this.
+     */
+    public synchronized int insert(float[] vector) {
+        int node = size;
+        int level = randomLevel();
+        Node[] current = nodes;
+        if (node == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[node] = new Node(level);
+        nodes = current;
+        size = node + 1;
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            entryPoint = new EntryPoint(node, level);
+            return node;
+        }
+
+        int closest = entry.node;
+        for (int layer = entry.level; layer > level; layer--) {
+            closest = greedyClosest(vector, closest, layer);
+        }
+        for (int layer = Math.min(level, entry.level); layer >= 0; layer--) {
+            List<Candidate> found = searchLayer(vector, closest, efConstruction, layer);
+            int[] neighbours = selectNeighbours(found, m);
+            current[node].links.set(layer, neighbours);
+            for (int neighbour : neighbours) {
+                link(neighbour, node, layer);
+            }
+            closest = found.get(0).node;
+        }
+        if (level > entry.level) {
+            entryPoint = new EntryPoint(node, level);
+        }
+        return node;
+    }
+
+    /**
+     * Returns up to {@code k} accepted nodes closest to the query, best first. Rejected nodes
+     * (e.g. deleted ones) are still used to navigate the graph.
+     */
+    public List<Candidate> search(float[] query, int k, IntPredicate accept) {
+        EntryPoint entry = entryPoint;
+        if (entry == null || k <= 0) {
+            return new ArrayList<>();
+        }
+        int closest = entry.node;
+        for (int layer = entry.level; layer > 0; layer--) {
+            closest = greedyClosest(query, closest, layer);
+        }
+        List<Candidate> found = searchLayer(query, closest, Math.max(efSearch, k), 0);
+        List<Candidate> result = new ArrayList<>(k);
+        for (Candidate candidate : found) {
+            if (accept.test(candidate.node)) {
+                result.add(candidate);
+                if (result.size() == k) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Adds a backlink, shrinking the neighbour's list with the same heuristic if it overflows
+    private void link(int from, int to, int layer) {
+        Node node = nodes[from];
+        int[] existing = node.links.get(layer);
+        int max = layer == 0 ? maxLinksLevel0 : m;
+        if (existing.length < max) {
+            int[] grown = Arrays.copyOf(existing, existing.length + 1);
+            grown[existing.length] = to;
+            node.links.set(layer, grown);
+            return;
+        }
+        float[] base = vectors.vector(from);
+        List<Candidate> candidates = new ArrayList<>(existing.length + 1);
+        for (int neighbour : existing) {
+            candidates.add(new Candidate(neighbour, vectors.similarity(base, neighbour)));
+        }
+        candidates.add(new Candidate(to, vectors.similarity(base, to)));
+        candidates.sort(Candidate.BEST_FIRST);
+        node.links.set(layer, selectNeighbours(candidates, max));
+    }
+
+    /**
+     * The HNSW neighbour heuristic: keep a candidate only if it is closer to the base node
+     * than to every neighbour already kept, which spreads links in different directions.
+     * Candidates must be sorted best first.
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        for (Candidate candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            float[] vector = vectors.vector(candidate.node);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (vectors.similarity(vector, selected[i]) > candidate.similarity) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate.node;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private int greedyClosest(float[] query, int start, int layer) {
+        int best = start;
+        float bestSimilarity = vectors.similarity(query, start);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : linksOf(best, layer)) {
+                float similarity = vectors.similarity(query, neighbour);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Beam search on one layer; returns up to ef nodes sorted best first
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int layer) {
+        VisitedSet seen = visited.get();
+        seen.reset(size);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Candidate.BEST_FIRST);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Candidate.WORST_FIRST);
+
+        Candidate first = new Candidate(start, vectors.similarity(query, start));
+        seen.add(start);
+        toVisit.add(first);
+        best.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Candidate current = toVisit.poll();
+            if (best.size() >= ef && current.similarity < best.peek().similarity) {
+                break;
+            }
+            for (int neighbour : linksOf(current.node, layer)) {
+                if (!seen.add(neighbour)) {
+                    continue;
+                }
+                float similarity = vectors.similarity(query, neighbour);
+                if (best.size() < ef || similarity > best.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    toVisit.add(candidate);
+                    best.add(candidate);
+                    if (best.size() > ef) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(Candidate.BEST_FIRST);
+        return result;
+    }
+
+    private int[] linksOf(int node, int layer) {
+        Node n = nodes[node];
+        return layer < n.links.length() ? n.links.get(layer) : NO_LINKS;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * Writes the graph (not the vectors) to {@code out}.
+     */
+    public synchronized void write(DataOutputStream out) throws IOException {
+        EntryPoint entry = entryPoint;
+        out.writeInt(size);
+        out.writeInt(entry == null ? -1 : entry.node);
+        out.writeInt(entry == null ? -1 : entry.level);
+        for (int i = 0; i < size; i++) {
+            Node node = nodes[i];
+            out.writeInt(node.links.length());
+            for (int layer = 0; layer < node.links.length(); layer++) {
+                int[] links = node.links.get(layer);
+                out.writeInt(links.length);
+                for (int link : links) {
+                    out.writeInt(link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces this (empty) index's graph with one written by {@link #write}.
+     */
+    public synchronized void read(DataInputStream in) throws IOException {
+        if (size != 0) {
+            throw new IllegalStateException("Can only read into an empty index");
+        }
+        int count = in.readInt();
+        int entryNode = in.readInt();
+        int entryLevel = in.readInt();
+        Node[] loaded = new Node[Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, count)) * 2)];
+        for (int i = 0; i < count; i++) {
+            int layers = in.readInt();
+            Node node = new Node(layers - 1);
+            for (int layer = 0; layer < layers; layer++) {
+                int[] links = new int[in.readInt()];
+                for (int j = 0; j < links.length; j++) {
+                    links[j] = in.readInt();
+                }
+                node.links.set(layer, links);
+            }
+            loaded[i] = node;
+        }
+        nodes = loaded;
+        size = count;
+        entryPoint = entryNode < 0 ? null : new EntryPoint(entryNode, entryLevel);
+    }
+
+    public static class Candidate {
+        static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.similarity, a.similarity);
+        static final Comparator<Candidate> WORST_FIRST = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+        final int node;
+        final float similarity;
+
+        Candidate(int node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+
+        public int getNode() {
+            return node;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static class Node {
+        final AtomicReferenceArray<int[]> links;
+
+        Node(int level) {
+            links = new AtomicReferenceArray<>(level + 1);
+            for (int layer = 0; layer <= level; layer++) {
+                links.set(layer, NO_LINKS);
+            }
+        }
+    }
+
+    private static class EntryPoint {
+        final int node;
+        final int level;
+
+        EntryPoint(int node, int level) {
+            this.node = node;
+            this.level = level;
+        }
+    }
+
+    // Visited marks reused across searches on the same thread; reset is O(1) via a generation counter
+    private static class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation = 0;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if (node >= marks.length) {
+                // Inserted after reset() by a concurrent writer
+                marks = Arrays.copyOf(marks, Math.max(node + 1, marks.length * 2));
+            }
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
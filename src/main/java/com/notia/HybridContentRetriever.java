@@ -0,0 +1,204 @@
+package com.notia;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Combines semantic and keyword retrieval. The vector retriever and a BM25 ranking of
+ * notes ({@link Database#rankNotes}) run at the same time on the {@link AsyncDatabase}
+ * executor, and their result lists are merged with reciprocal rank fusion: every note
+ * scores {@code 1 / (RRF_K + rank)} for each list it appears in. Fusing ranks rather
+ * than scores means cosine similarities and BM25 scores never have to be calibrated
+ * against each other.
+ *
+ * Results are per note. A note found by the vector search is represented by its best
+ * chunk; a note only found by keyword is represented by the chunk with the most query
+ * terms, so exact identifiers and names still come back with their surrounding text.
+ */
+public class HybridContentRetriever implements ContentRetriever {
+
+    // The usual RRF constant; damps the difference between the first few ranks
+    static final int RRF_K = 60;
+    private static final String NOTE_KEY_PREFIX = "note:";
+
+    private final ContentRetriever vectorRetriever;
+    private final int keywordCandidates;
+    private final int maxResults;
+    private final Supplier<Filter> scope;
+
+    /**
+     * @param vectorRetriever   should return more than {@code maxResults} chunks, since several may be from one note
+     * @param keywordCandidates how many notes to take from the BM25 ranking
+     * @param scope             metadata filter the keyword hits must also pass; may supply null
+     */
+    public HybridContentRetriever(ContentRetriever vectorRetriever, int keywordCandidates, int maxResults,
+                                  Supplier<Filter> scope) {
+        this.vectorRetriever = vectorRetriever;
+        this.keywordCandidates = keywordCandidates;
+        this.maxResults = maxResults;
+        this.scope = scope;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long start = System.nanoTime();
+        CompletableFuture<Timed<List<Content>>> vector = AsyncDatabase.supply(
+                () -> Timed.run(() -> vectorRetriever.retrieve(query)));
+        CompletableFuture<Timed<List<NoteSearchIndex.ScoredNote>>> keyword = AsyncDatabase.supply(
+                () -> Timed.run(() -> Database.rankNotes(query.text(), keywordCandidates)));
+
+        List<Content> vectorHits = stageResult(vector, "Vector");
+        List<NoteSearchIndex.ScoredNote> keywordHits = stageResult(keyword, "Keyword");
+
+        long fusionStart = System.nanoTime();
+        List<Content> fused = fuse(query.text(), vectorHits, keywordHits);
+        long end = System.nanoTime();
+
+        System.out.printf("Retrieval: vector %d ms (%d), keyword %d ms (%d), fusion %d ms, total %d ms -> %d results%n",
+                millis(vector), vectorHits.size(), millis(keyword), keywordHits.size(),
+                (end - fusionStart) / 1_000_000, (end - start) / 1_000_000, fused.size());
+        return fused;
+    }
+
+    private List<Content> fuse(String query, List<Content> vectorHits, List<NoteSearchIndex.ScoredNote> keywordHits) {
+        // Key -> fused score; insertion order breaks ties in favour of the vector ranking
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Map<String, Content> bestChunk = new HashMap<>();
+        int rank = 0;
+        for (Content content : vectorHits) {
+            String key = key(content.textSegment());
+            if (!bestChunk.containsKey(key)) {
+                bestChunk.put(key, content);
+                scores.put(key, 1.0 / (RRF_K + ++rank));
+            }
+        }
+
+        List<Integer> keywordOnlyIds = new ArrayList<>();
+        Map<Integer, Integer> keywordRanks = new LinkedHashMap<>();
+        rank = 0;
+        for (NoteSearchIndex.ScoredNote hit : keywordHits) {
+            int noteId = hit.note.getId();
+            keywordRanks.put(noteId, ++rank);
+            if (!bestChunk.containsKey(noteKey(noteId))) {
+                keywordOnlyIds.add(noteId);
+            }
+        }
+
+        // The vector store applied the scope already; keyword hits are checked against the same metadata
+        Map<Integer, Metadata> metadata = keywordOnlyIds.isEmpty()
+                ? Collections.emptyMap() : Database.getVectorMetadata(keywordOnlyIds);
+        Filter filter = scope.get();
+        for (Map.Entry<Integer, Integer> entry : keywordRanks.entrySet()) {
+            String key = noteKey(entry.getKey());
+            boolean allowed = bestChunk.containsKey(key)
+                    || (metadata.containsKey(entry.getKey()) && (filter == null || filter.test(metadata.get(entry.getKey()))));
+            if (allowed) {
+                scores.merge(key, 1.0 / (RRF_K + entry.getValue()), Double::sum);
+            }
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        List<Content> results = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : ranked) {
+            if (results.size() >= maxResults) {
+                break;
+            }
+            Content content = bestChunk.get(entry.getKey());
+            if (content == null) {
+                int noteId = Integer.parseInt(entry.getKey().substring(NOTE_KEY_PREFIX.length()));
+                content = keywordChunk(query, noteId, metadata.get(noteId));
+            }
+            if (content != null) {
+                results.add(content);
+            }
+        }
+        return results;
+    }
+
+    private static String noteKey(int noteId) {
+        return NOTE_KEY_PREFIX + noteId;
+    }
+
+    // Chunks stored before metadata was added have no note id; they are keyed by their text
+    private static String key(TextSegment segment) {
+        Integer noteId = segment.metadata().getInteger(VectorDB.METADATA_NOTE_ID);
+        return noteId != null ? noteKey(noteId) : "text:" + segment.text();
+    }
+
+    // The chunk of the note containing the most occurrences of the query terms
+    private static Content keywordChunk(String query, int noteId, Metadata metadata) {
+        Note note = Database.getNoteById(noteId);
+        if (note == null || note.getContent() == null) {
+            return null;
+        }
+        Set<String> terms = NoteSearchIndex.tokenize(query);
+        List<String> chunks = NoteChunker.split(Database.buildEmbeddingText(noteId, note.getTitle(), note.getContent()));
+        int best = 0;
+        int bestCount = -1;
+        for (int i = 0; i < chunks.size(); i++) {
+            int count = 0;
+            for (Map.Entry<String, Integer> term : NoteSearchIndex.countTerms(chunks.get(i)).entrySet()) {
+                if (terms.contains(term.getKey())) {
+                    count += term.getValue();
+                }
+            }
+            if (count > bestCount) {
+                best = i;
+                bestCount = count;
+            }
+        }
+        Metadata chunkMetadata = metadata == null ? new Metadata() : metadata.copy();
+        chunkMetadata.put(VectorDB.METADATA_CHUNK, best);
+        return Content.from(TextSegment.from(chunks.get(best), chunkMetadata));
+    }
+
+    // A failed stage just contributes nothing, so the other one can still answer
+    private static <T> List<T> stageResult(CompletableFuture<Timed<List<T>>> stage, String name) {
+        try {
+            List<T> result = stage.join().value;
+            return result != null ? result : Collections.emptyList();
+        } catch (Exception e) {
+            System.err.println("Warning: " + name + " retrieval failed: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static long millis(CompletableFuture<? extends Timed<?>> stage) {
+        if (!stage.isDone() || stage.isCompletedExceptionally()) {
+            return -1;
+        }
+        return stage.join().nanos / 1_000_000;
+    }
+
+    // A stage's result with how long it took on its own thread
+    private static class Timed<T> {
+        final T value;
+        final long nanos;
+
+        Timed(T value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+
+        static <T> Timed<T> run(Supplier<T> work) {
+            long start = System.nanoTime();
+            T value = work.get();
+            return new Timed<>(value, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,783 @@
+package com.notia;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * In-process {@link EmbeddingStore} backed by an {@link HnswIndex}, so vector search
+ * works without a Chroma server and without a network hop.
+ *
+ * Searches walk the HNSW graph, or scan every vector exactly (see {@link SearchMode});
+ * below a few tens of thousands of vectors the exact scan is fast enough and never
+ * misses a neighbour.
+ *
+ * Vectors are kept off-heap in a {@link MappedVectorStorage} file next to the index
+ * file (float32 or int8); the heap only holds ids, segments and the graph links.
+ *
+ * With a {@link Quantization} other than NONE the exact scan runs over compressed codes
+ * kept on the heap (int8, or product quantization codes trained once enough vectors are
+ * stored) and re-ranks the best few times k candidates against the full vectors, so a
+ * query reads only a handful of records from the vector file.
+ *
+ * Writes are serialized; searches run concurrently with them. Removing or replacing an
+ * id only marks the old node deleted (HNSW graphs can't unlink nodes cheaply); deleted
+ * nodes are dropped when the index is loaded and they make up a large share of it.
+ *
+ * Ids, segments and links are saved a few seconds after a change, on {@link #close()} and
+ * whenever {@link #save()} is called (the embedding queue does before recording notes as
+ * embedded), after flushing the vector file; the index file is written to a temp file first and moved
+ * into place, so it always describes vectors that are on disk.
+ */
+public class LocalEmbeddingStore implements EmbeddingStore<TextSegment>, AutoCloseable {
+
+    public enum SearchMode {
+        HNSW,
+        EXACT,
+        // EXACT up to EXACT_SEARCH_MAX_VECTORS vectors, HNSW above
+        AUTO
+    }
+
+    public enum Quantization { NONE, INT8, PQ }
+
+    public static final int EXACT_SEARCH_MAX_VECTORS = 50_000;
+    // Candidates shortlisted on the codes per result, before re-ranking with the full vectors
+    public static final int RERANK_FACTOR = 4;
+
+    private static final int MAGIC = 0x4E484E53; // "NHNS"
+    private static final int VERSION = 2;
+    private static final long SAVE_DELAY_SECONDS = 5;
+    private static final double COMPACT_DELETED_RATIO = 0.25;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PQ_MIN_TRAINING_VECTORS = 4 * ProductQuantizer.CENTROIDS;
+    private static final int PQ_TRAINING_SAMPLE = 8192;
+    private static final int PQ_TRAINING_ITERATIONS = 8;
+
+    private final Path file;
+    private final int m;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final MappedVectorStorage.Encoding encoding;
+    private final Quantization quantization;
+    private final int pqSubspaces;
+    private volatile SearchMode searchMode = SearchMode.AUTO;
+    private final SecureRandom random = new SecureRandom();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<String, Integer> nodeById = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService saver;
+
+    private volatile Entry[] entries = new Entry[INITIAL_CAPACITY];
+    // Null while the store is empty, since the vector file needs the dimension of the first vector
+    private volatile Graph graph;
+    private int deletedCount = 0;
+    private boolean dirty = false;
+    private boolean saveScheduled = false;
+    private boolean loadedFromDisk = false;
+    private boolean quantizerTrainingScheduled = false;
+
+    public LocalEmbeddingStore(Path file, int m, int efConstruction, int efSearch, MappedVectorStorage.Encoding encoding) {
+        this(file, m, efConstruction, efSearch, encoding, Quantization.NONE, 0);
+    }
+
+    public LocalEmbeddingStore(Path file, int m, int efConstruction, int efSearch, MappedVectorStorage.Encoding encoding,
+                               Quantization quantization, int pqSubspaces) {
+        this.file = file;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.encoding = encoding;
+        this.quantization = quantization;
+        this.pqSubspaces = pqSubspaces;
+        this.saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notia-vector-index-save");
+            t.setDaemon(true);
+            return t;
+        });
+        load();
+    }
+
+    // False when the index file was missing or unreadable and the store started empty
+    public boolean isLoadedFromDisk() {
+        return loadedFromDisk;
+    }
+
+    public int size() {
+        return nodeById.size();
+    }
+
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+        Graph current = graph;
+        if (current != null) {
+            current.index.setEfSearch(efSearch);
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    /**
+     * Adds the embeddings, replacing any that already exist under the same ids.
+     */
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids.size() != embeddings.size() || (segments != null && segments.size() != ids.size())) {
+            throw new IllegalArgumentException("ids, embeddings and segments must have the same size");
+        }
+        writeLock.lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), normalize(embeddings.get(i).vector()), segments == null ? null : segments.get(i));
+            }
+            markDirty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        writeLock.lock();
+        try {
+            for (String id : ids) {
+                markDeleted(id);
+            }
+            markDirty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        writeLock.lock();
+        try {
+            for (String id : new ArrayList<>(nodeById.keySet())) {
+                Integer node = nodeById.get(id);
+                TextSegment segment = node == null ? null : entries[node].segment;
+                if (segment != null && filter.test(segment.metadata())) {
+                    markDeleted(id);
+                }
+            }
+            markDirty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        writeLock.lock();
+        try {
+            nodeById.clear();
+            entries = new Entry[INITIAL_CAPACITY];
+            // The old vector file is deleted after the next save
+            graph = null;
+            deletedCount = 0;
+            markDirty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = normalize(request.queryEmbedding().vector());
+        Filter filter = request.filter();
+        Entry[] snapshot = entries;
+        Graph current = graph;
+        if (current == null) {
+            return new EmbeddingSearchResult<>(new ArrayList<>());
+        }
+
+        SearchMode mode = searchMode;
+        boolean exact = mode == SearchMode.EXACT
+                || (mode == SearchMode.AUTO && current.storage.size() <= EXACT_SEARCH_MAX_VECTORS);
+        List<HnswIndex.Candidate> candidates = null;
+        if (!exact) {
+            candidates = current.index.search(query, request.maxResults(), node -> accepts(snapshot, node, filter));
+        }
+        if (exact || (filter != null && candidates.size() < request.maxResults())) {
+            // A selective filter can reject most of the beam, so filtered searches fall back to the scan too
+            candidates = exactSearch(current, snapshot, query, request.maxResults(), filter);
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (HnswIndex.Candidate candidate : candidates) {
+            double score = RelevanceScore.fromCosineSimilarity(candidate.getSimilarity());
+            if (score < request.minScore()) {
+                break;
+            }
+            Entry entry = snapshot[candidate.getNode()];
+            matches.add(new EmbeddingMatch<>(score, entry.id, Embedding.from(current.storage.get(candidate.getNode())),
+                    entry.segment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private List<HnswIndex.Candidate> exactSearch(Graph current, Entry[] snapshot, float[] query, int k, Filter filter) {
+        MappedVectorStorage storage = current.storage;
+        QuantizedCodes codes = current.codes;
+        TopK top;
+        if (codes == null) {
+            top = storage.topK(query, k, node -> accepts(snapshot, node, filter));
+        } else {
+            // Shortlist on the codes, then re-rank the shortlist with the full vectors
+            int coded = codes.size();
+            TopK shortlist = codes.topK(query, k * RERANK_FACTOR, coded, node -> accepts(snapshot, node, filter));
+            int[] shortlisted = new int[shortlist.size()];
+            int count = shortlist.drainDescending(shortlisted, new float[shortlisted.length]);
+            top = new TopK(k);
+            for (int i = 0; i < count; i++) {
+                top.offer(shortlisted[i], storage.dot(query, shortlisted[i]));
+            }
+            // Vectors appended after the codes were read
+            for (int node = coded; node < storage.size(); node++) {
+                if (accepts(snapshot, node, filter)) {
+                    top.offer(node, storage.dot(query, node));
+                }
+            }
+        }
+        int[] nodes = new int[top.size()];
+        float[] similarities = new float[top.size()];
+        int count = top.drainDescending(nodes, similarities);
+        List<HnswIndex.Candidate> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new HnswIndex.Candidate(nodes[i], similarities[i]));
+        }
+        return result;
+    }
+
+    private static boolean accepts(Entry[] snapshot, int node, Filter filter) {
+        Entry entry = node < snapshot.length ? snapshot[node] : null;
+        if (entry == null || entry.deleted) {
+            return false;
+        }
+        if (filter == null) {
+            return true;
+        }
+        return entry.segment != null && filter.test(entry.segment.metadata());
+    }
+
+    // Caller holds writeLock
+    private void insert(String id, float[] vector, TextSegment segment) {
+        markDeleted(id);
+        Graph current = graph;
+        if (current == null) {
+            current = newGraph(vector.length);
+            graph = current;
+        }
+        Entry[] currentEntries = entries;
+        int node = current.storage.size();
+        if (node == currentEntries.length) {
+            currentEntries = Arrays.copyOf(currentEntries, currentEntries.length * 2);
+        }
+        currentEntries[node] = new Entry(id, segment);
+        entries = currentEntries;
+        current.storage.append(vector);
+        current.index.insert(vector);
+        nodeById.put(id, node);
+        if (current.codes != null) {
+            current.codes.append(vector);
+        } else if (quantization == Quantization.PQ && !quantizerTrainingScheduled
+                && current.storage.size() >= PQ_MIN_TRAINING_VECTORS && !saver.isShutdown()) {
+            quantizerTrainingScheduled = true;
+            Graph target = current;
+            saver.execute(() -> trainProductQuantizer(target));
+        }
+    }
+
+    /**
+     * Trains PQ codebooks on a sample of the graph's vectors and encodes all of them, off
+     * the write lock; then catches up on vectors added meanwhile and installs the codes.
+     */
+    private void trainProductQuantizer(Graph target) {
+        try {
+            long start = System.currentTimeMillis();
+            int count = target.storage.size();
+            List<float[]> sample = new ArrayList<>();
+            Random sampler = new Random(target.storage.generation());
+            int step = Math.max(1, count / PQ_TRAINING_SAMPLE);
+            for (int node = sampler.nextInt(step); node < count && sample.size() < PQ_TRAINING_SAMPLE; node += step) {
+                sample.add(target.storage.get(node));
+            }
+            int dimension = target.storage.dimension();
+            ProductQuantizer quantizer = ProductQuantizer.train(sample,
+                    ProductQuantizer.fitSubspaces(dimension, pqSubspaces), PQ_TRAINING_ITERATIONS, sampler);
+            QuantizedCodes codes = new QuantizedCodes(quantizer, count);
+            for (int node = 0; node < count; node++) {
+                codes.append(target.storage.get(node));
+            }
+            writeLock.lock();
+            try {
+                if (graph != target) {
+                    return;
+                }
+                for (int node = codes.size(); node < target.storage.size(); node++) {
+                    codes.append(target.storage.get(node));
+                }
+                target.codes = codes;
+                markDirty();
+            } finally {
+                writeLock.unlock();
+            }
+            System.out.println("Trained " + quantizer + " quantizer on " + sample.size() + " vectors in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        } catch (RuntimeException e) {
+            System.err.println("Warning: Could not train product quantizer, searching full vectors: " + e.getMessage());
+        } finally {
+            writeLock.lock();
+            try {
+                quantizerTrainingScheduled = false;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    // Caller holds writeLock
+    private void markDeleted(String id) {
+        Integer node = nodeById.remove(id);
+        if (node != null) {
+            entries[node].deleted = true;
+            deletedCount++;
+        }
+    }
+
+    // A fresh vector file (under a new generation, so it never clobbers a file still in use) and an empty graph
+    private Graph newGraph(int dimension) {
+        long generation = random.nextLong() & Long.MAX_VALUE;
+        try {
+            Graph created = new Graph(MappedVectorStorage.create(vectorFile(generation), dimension, encoding, generation));
+            if (quantization == Quantization.INT8) {
+                created.codes = new QuantizedCodes(new ScalarQuantizer(dimension), INITIAL_CAPACITY);
+            }
+            return created;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create vector file for " + file, e);
+        }
+    }
+
+    private Path vectorFile(long generation) {
+        return file.resolveSibling(file.getFileName() + ".vectors-" + generation);
+    }
+
+    private Path codesFile(long generation) {
+        return file.resolveSibling(file.getFileName() + ".codes-" + generation);
+    }
+
+    private HnswIndex newIndex(MappedVectorStorage storage) {
+        return new HnswIndex(new HnswIndex.VectorSource() {
+            @Override
+            public float similarity(float[] query, int node) {
+                return storage.dot(query, node);
+            }
+
+            @Override
+            public float[] vector(int node) {
+                return storage.get(node);
+            }
+        }, m, efConstruction, efSearch);
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    // Caller holds writeLock
+    private void markDirty() {
+        dirty = true;
+        if (!saveScheduled && !saver.isShutdown()) {
+            saveScheduled = true;
+            saver.schedule(this::saveQuietly, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to save local vector index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the index to disk if it changed since the last save. Blocks writers, not searches.
+     */
+    public void save() throws IOException {
+        writeLock.lock();
+        try {
+            saveScheduled = false;
+            if (!dirty) {
+                return;
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            deleteStaleVectorFiles();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        saver.shutdown();
+        saveQuietly();
+        Graph current = graph;
+        if (current != null) {
+            closeQuietly(current.storage);
+        }
+    }
+
+    // Caller holds writeLock. The vectors are flushed first, so the index file never references unwritten ones
+    private void writeTo(DataOutputStream out) throws IOException {
+        Graph current = graph;
+        int count = current == null ? 0 : current.storage.size();
+        Entry[] snapshot = entries;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(current == null ? -1 : current.storage.generation());
+        out.writeInt(count);
+        if (current == null) {
+            return;
+        }
+        current.storage.force();
+        if (current.codes != null) {
+            current.codes.sync(codesFile(current.storage.generation()), current.storage.generation());
+        }
+        for (int node = 0; node < count; node++) {
+            Entry entry = snapshot[node];
+            out.writeUTF(entry.id);
+            out.writeBoolean(entry.deleted);
+            writeSegment(out, entry.segment);
+        }
+        current.index.write(out);
+    }
+
+    // Vector and codes files of earlier generations (before a compaction or removeAll); retried after every save
+    private void deleteStaleVectorFiles() {
+        Graph current = graph;
+        Path keepVectors = current == null ? null : current.storage.getFile().toAbsolutePath();
+        Path keepCodes = current == null || current.codes == null ? null
+                : codesFile(current.storage.generation()).toAbsolutePath();
+        String vectorPrefix = file.getFileName() + ".vectors-";
+        String codesPrefix = file.getFileName() + ".codes-";
+        Path dir = file.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(f -> f.getFileName().toString().startsWith(vectorPrefix)
+                            || f.getFileName().toString().startsWith(codesPrefix))
+                 .filter(f -> !f.toAbsolutePath().equals(keepVectors) && !f.toAbsolutePath().equals(keepCodes))
+                 .forEach(f -> {
+                     try {
+                         Files.deleteIfExists(f);
+                     } catch (IOException e) {
+                         // Still mapped (e.g. on Windows); try again after the next save
+                     }
+                 });
+        } catch (IOException e) {
+            System.err.println("Warning: Could not clean up old vector files: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            System.out.println("No local vector index at " + file + ", starting empty");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a Notia vector index or unsupported version");
+            }
+            long generation = in.readLong();
+            int count = in.readInt();
+            if (generation < 0) {
+                loadedFromDisk = true;
+                return;
+            }
+            // Maps the vectors rather than reading them; pages are loaded on first access
+            Graph loadedGraph = new Graph(MappedVectorStorage.open(vectorFile(generation), generation, count));
+            Entry[] loaded = new Entry[Math.max(INITIAL_CAPACITY, count)];
+            int deleted = 0;
+            for (int node = 0; node < count; node++) {
+                String id = in.readUTF();
+                boolean isDeleted = in.readBoolean();
+                loaded[node] = new Entry(id, readSegment(in));
+                loaded[node].deleted = isDeleted;
+                if (isDeleted) {
+                    deleted++;
+                }
+            }
+            loadedGraph.index.read(in);
+            loadCodes(loadedGraph);
+            entries = loaded;
+            graph = loadedGraph;
+            for (int node = 0; node < count; node++) {
+                if (!loaded[node].deleted) {
+                    nodeById.put(loaded[node].id, node);
+                }
+            }
+            deletedCount = deleted;
+            loadedFromDisk = true;
+            if (count > 0 && (double) deleted / count > COMPACT_DELETED_RATIO) {
+                compact();
+            } else if (loadedGraph.storage.encoding() != encoding) {
+                System.out.println("Re-encoding local vector index from " + loadedGraph.storage.encoding() + " to " + encoding);
+                compact();
+            }
+            // Compaction schedules training itself when it re-inserts enough vectors
+            Graph current = graph;
+            if (quantization == Quantization.PQ && current != null && current.codes == null && !quantizerTrainingScheduled
+                    && current.storage.size() >= PQ_MIN_TRAINING_VECTORS) {
+                quantizerTrainingScheduled = true;
+                saver.execute(() -> trainProductQuantizer(current));
+            }
+            System.out.println("Loaded local vector index: " + nodeById.size() + " vectors in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            System.err.println("Warning: Could not read local vector index " + file + ", starting empty: " + e.getMessage());
+            nodeById.clear();
+            entries = new Entry[INITIAL_CAPACITY];
+            graph = null;
+            deletedCount = 0;
+        }
+    }
+
+    // Reads the saved codes if they match the configured quantization, encoding any the file is missing
+    private void loadCodes(Graph loadedGraph) {
+        if (quantization == Quantization.NONE) {
+            return;
+        }
+        MappedVectorStorage storage = loadedGraph.storage;
+        QuantizedCodes codes = null;
+        Path codesFile = codesFile(storage.generation());
+        if (Files.exists(codesFile)) {
+            try {
+                codes = QuantizedCodes.read(codesFile, storage.generation(), storage.size());
+                boolean matches = quantization == Quantization.INT8
+                        ? codes.quantizer() instanceof ScalarQuantizer
+                        : codes.quantizer() instanceof ProductQuantizer;
+                if (!matches || codes.quantizer().dimension() != storage.dimension()) {
+                    codes = null;
+                }
+            } catch (IOException e) {
+                System.err.println("Warning: Could not read vector codes " + codesFile + ": " + e.getMessage());
+            }
+        }
+        if (codes == null && quantization == Quantization.INT8) {
+            codes = new QuantizedCodes(new ScalarQuantizer(storage.dimension()), storage.size());
+        }
+        if (codes == null) {
+            // PQ codebooks are trained once the index is loaded
+            return;
+        }
+        for (int node = codes.size(); node < storage.size(); node++) {
+            codes.append(storage.get(node));
+        }
+        loadedGraph.codes = codes;
+    }
+
+    // Rebuilds the graph from the live entries only
+    private void compact() {
+        writeLock.lock();
+        try {
+            Entry[] old = entries;
+            Graph oldGraph = graph;
+            int count = oldGraph.storage.size();
+            nodeById.clear();
+            entries = new Entry[Math.max(INITIAL_CAPACITY, count - deletedCount)];
+            graph = null;
+            deletedCount = 0;
+            for (int node = 0; node < count; node++) {
+                if (!old[node].deleted) {
+                    insert(old[node].id, oldGraph.storage.get(node), old[node].segment);
+                }
+            }
+            closeQuietly(oldGraph.storage);
+            markDirty();
+            System.out.println("Compacted local vector index to " + nodeById.size() + " vectors");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void writeSegment(DataOutputStream out, TextSegment segment) throws IOException {
+        out.writeBoolean(segment != null);
+        if (segment == null) {
+            return;
+        }
+        writeString(out, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Integer) {
+                out.writeByte('i');
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte('l');
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte('f');
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte('d');
+                out.writeDouble((Double) value);
+            } else if (value instanceof UUID) {
+                out.writeByte('u');
+                writeString(out, value.toString());
+            } else {
+                out.writeByte('s');
+                writeString(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private static TextSegment readSegment(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String text = readString(in);
+        Metadata metadata = new Metadata();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+                case 'i': metadata.put(key, in.readInt()); break;
+                case 'l': metadata.put(key, in.readLong()); break;
+                case 'f': metadata.put(key, in.readFloat()); break;
+                case 'd': metadata.put(key, in.readDouble()); break;
+                case 'u': metadata.put(key, UUID.fromString(readString(in))); break;
+                case 's': metadata.put(key, readString(in)); break;
+                default: throw new IOException("Unknown metadata type " + type);
+            }
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    // writeUTF is limited to 64KB, notes can be longer
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(MappedVectorStorage storage) {
+        try {
+            storage.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not close vector file " + storage.getFile() + ": " + e.getMessage());
+        }
+    }
+
+    private static class Entry {
+        final String id;
+        final TextSegment segment;
+        volatile boolean deleted;
+
+        Entry(String id, TextSegment segment) {
+            this.id = id;
+            this.segment = segment;
+        }
+    }
+
+    // The vectors and the graph over them; replaced together so searches always see a matching pair
+    private class Graph {
+        final MappedVectorStorage storage;
+        final HnswIndex index;
+        // Compressed copies of the vectors for the exact scan, null without quantization or until PQ is trained
+        volatile QuantizedCodes codes;
+
+        Graph(MappedVectorStorage storage) {
+            this.storage = storage;
+            this.index = newIndex(storage);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.notia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Fixed-size vectors stored back to back in a memory-mapped file, so they live in the
+ * page cache instead of on the Java heap and opening the file costs no deserialization.
+ *
+ * Two encodings are supported: FLOAT32 (4 bytes per dimension) and INT8, where each
+ * vector is stored as one float scale followed by one signed byte per dimension
+ * (value = byte * scale), about a quarter of the size at a small cost in precision.
+ * INT8 records are {@link ScalarQuantizer} codes, encoded and scored by its helpers.
+ *
+ * The file is mapped in chunks of whole records, since one mapping can't exceed 2GB.
+ * Appends are not thread-safe and must be serialized by the caller; reads of records
+ * that have been published to readers (e.g. through a volatile write) are safe from
+ * any thread.
+ *
+ * Similarities are computed by copying a record into a per-thread scratch array and
+ * running a {@link VectorMath} kernel over it. {@link #topK} scans every record in
+ * parallel for exact search.
+ */
+public class MappedVectorStorage implements AutoCloseable {
+
+    public enum Encoding { FLOAT32, INT8 }
+
+    private static final int MAGIC = 0x4E564543; // "NVEC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final long CHUNK_BYTES = 16L * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int dimension;
+    private final Encoding encoding;
+    private final long generation;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+    private final MappedByteBuffer header;
+
+    private final ThreadLocal<float[]> floatScratch;
+    private final ThreadLocal<byte[]> byteScratch;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    // Float views of the chunks, for bulk reads of FLOAT32 records
+    private volatile FloatBuffer[] floatChunks = new FloatBuffer[0];
+    private volatile int size;
+
+    private MappedVectorStorage(Path file, FileChannel channel, int dimension, Encoding encoding,
+                                long generation, int size) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.dimension = dimension;
+        this.encoding = encoding;
+        this.generation = generation;
+        this.recordBytes = encoding == Encoding.INT8 ? Float.BYTES + dimension : Float.BYTES * dimension;
+        this.recordsPerChunk = (int) Math.max(1, CHUNK_BYTES / recordBytes);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.header.order(ByteOrder.LITTLE_ENDIAN);
+        this.floatScratch = ThreadLocal.withInitial(() -> new float[dimension]);
+        this.byteScratch = ThreadLocal.withInitial(() -> new byte[dimension]);
+        this.size = size;
+        ensureCapacity(size);
+    }
+
+    /**
+     * Creates a new, empty storage file, replacing any file at {@code file}.
+     */
+    public static MappedVectorStorage create(Path file, int dimension, Encoding encoding, long generation) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedVectorStorage storage = new MappedVectorStorage(file, channel, dimension, encoding, generation, 0);
+        storage.header.putInt(0, MAGIC);
+        storage.header.putInt(4, VERSION);
+        storage.header.putInt(8, dimension);
+        storage.header.putInt(12, encoding.ordinal());
+        storage.header.putLong(16, generation);
+        storage.header.putInt(24, 0);
+        return storage;
+    }
+
+    /**
+     * Maps an existing storage file. Only the first {@code size} vectors are kept; anything
+     * appended after the caller's last consistent save is dropped.
+     */
+    public static MappedVectorStorage open(Path file, long expectedGeneration, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(head, 0);
+            if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION) {
+                throw new IOException("not a Notia vector file or unsupported version");
+            }
+            int dimension = head.getInt(8);
+            Encoding encoding = Encoding.values()[head.getInt(12)];
+            long generation = head.getLong(16);
+            int stored = head.getInt(24);
+            if (generation != expectedGeneration) {
+                throw new IOException("vector file belongs to another index generation");
+            }
+            if (stored < size) {
+                throw new IOException("vector file has " + stored + " vectors, index needs " + size);
+            }
+            MappedVectorStorage storage = new MappedVectorStorage(file, channel, dimension, encoding, generation, size);
+            storage.header.putInt(24, size);
+            return storage;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a vector and returns its slot. Callers serialize appends.
+     */
+    public int append(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + vector.length);
+        }
+        int slot = size;
+        ensureCapacity(slot + 1);
+        ByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int offset = (slot % recordsPerChunk) * recordBytes;
+        if (encoding == Encoding.INT8) {
+            byte[] bytes = byteScratch.get();
+            chunk.putFloat(offset, ScalarQuantizer.quantize(vector, bytes, 0));
+            chunk.put(offset + Float.BYTES, bytes);
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                chunk.putFloat(offset + i * Float.BYTES, vector[i]);
+            }
+        }
+        size = slot + 1;
+        header.putInt(24, size);
+        return slot;
+    }
+
+    // Dot product of the query with the stored vector
+    public float dot(float[] query, int slot) {
+        int chunk = slot / recordsPerChunk;
+        int offset = (slot % recordsPerChunk) * recordBytes;
+        if (encoding == Encoding.INT8) {
+            ByteBuffer buffer = chunks[chunk];
+            byte[] bytes = byteScratch.get();
+            buffer.get(offset + Float.BYTES, bytes);
+            return ScalarQuantizer.score(query, bytes, buffer.getFloat(offset));
+        }
+        float[] floats = floatScratch.get();
+        floatChunks[chunk].get(offset / Float.BYTES, floats);
+        return VectorMath.dot(query, floats);
+    }
+
+    /**
+     * Exact search: scores every accepted record against the query and returns the
+     * best {@code k}. The scan is split across the common fork/join pool.
+     */
+    public TopK topK(float[] query, int k, IntPredicate accept) {
+        return TopK.scan(size, k, accept, slot -> dot(query, slot));
+    }
+
+    public float[] get(int slot) {
+        ByteBuffer chunk = chunks[slot / recordsPerChunk];
+        int offset = (slot % recordsPerChunk) * recordBytes;
+        float[] vector = new float[dimension];
+        if (encoding == Encoding.INT8) {
+            float scale = chunk.getFloat(offset);
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = ScalarQuantizer.dequantize(chunk.get(offset + Float.BYTES + i), scale);
+            }
+        } else {
+            floatChunks[slot / recordsPerChunk].get(offset / Float.BYTES, vector);
+        }
+        return vector;
+    }
+
+    // Flushes written vectors to disk
+    public void force() {
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mappings stay valid until they are garbage collected; Java has no portable unmap
+        channel.close();
+    }
+
+    private void ensureCapacity(int records) {
+        int needed = (records + recordsPerChunk - 1) / recordsPerChunk;
+        ByteBuffer[] current = chunks;
+        if (needed <= current.length) {
+            return;
+        }
+        ByteBuffer[] grown = Arrays.copyOf(current, needed);
+        FloatBuffer[] grownFloats = Arrays.copyOf(floatChunks, needed);
+        try {
+            for (int i = current.length; i < needed; i++) {
+                long position = HEADER_BYTES + (long) i * recordsPerChunk * recordBytes;
+                // Mapping past the end of the file grows it
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) recordsPerChunk * recordBytes);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                grown[i] = chunk;
+                grownFloats[i] = chunk.asFloatBuffer();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map vector file " + file, e);
+        }
+        floatChunks = grownFloats;
+        chunks = grown;
+    }
+}
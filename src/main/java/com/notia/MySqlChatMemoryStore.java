@@ -0,0 +1,76 @@
+package com.notia;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chat memories in the chat_memory MySQL table, one row of JSON-serialized messages per
+ * conversation id. Written when {@link ChatSessionPool} evicts a session or shuts down,
+ * and read back when the conversation continues.
+ */
+public class MySqlChatMemoryStore implements ChatMemoryStore {
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS chat_memory (" +
+                "memory_id VARCHAR(255) PRIMARY KEY," +
+                "messages LONGTEXT NOT NULL," +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP)");
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String sql = "SELECT messages FROM chat_memory WHERE memory_id = ?";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, memoryId.toString());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return ChatMessageDeserializer.messagesFromJson(rs.getString("messages"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Warning: Failed to load chat memory " + memoryId + ": " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            deleteMessages(memoryId);
+            return;
+        }
+        String sql = "INSERT INTO chat_memory (memory_id, messages) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE messages = VALUES(messages)";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, memoryId.toString());
+            pstmt.setString(2, ChatMessageSerializer.messagesToJson(messages));
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Warning: Failed to save chat memory " + memoryId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String sql = "DELETE FROM chat_memory WHERE memory_id = ?";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, memoryId.toString());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Warning: Failed to delete chat memory " + memoryId + ": " + e.getMessage());
+        }
+    }
+}
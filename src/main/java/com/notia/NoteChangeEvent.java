@@ -0,0 +1,36 @@
+package com.notia;
+
+public class NoteChangeEvent {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+    private final Note note;
+
+    public NoteChangeEvent(Type type, Note note) {
+        this.type = type;
+        this.note = note;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // For DELETED events only the id is guaranteed to be set
+    public Note getNote() {
+        return note;
+    }
+
+    public int getNoteId() {
+        return note.getId();
+    }
+
+    @Override
+    public String toString() {
+        return type + " note " + note.getId();
+    }
+}
@@ -0,0 +1,10 @@
+package com.notia;
+
+/**
+ * Notified by {@link Database} after a note has been inserted, updated or deleted.
+ * Listeners run on the thread that made the change.
+ */
+@FunctionalInterface
+public interface NoteChangeListener {
+    void onNoteChanged(NoteChangeEvent event);
+}
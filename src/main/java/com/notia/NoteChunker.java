@@ -0,0 +1,223 @@
+package com.notia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a note's embedding text into chunks small enough for the embedding model,
+ * which truncates its input at 256 word pieces (about 1000 characters of English).
+ *
+ * The body is split at markdown headings into sections, and sections at blank lines
+ * into blocks (fenced code blocks are kept whole). Blocks are packed into chunks of up
+ * to {@link #MAX_CHUNK_CHARS}; oversized blocks are split at sentence ends, then at
+ * whitespace. Consecutive chunks of a section overlap by up to {@link #OVERLAP_CHARS},
+ * so a sentence cut at a chunk boundary is still whole in one of them.
+ *
+ * Every chunk repeats the header of the embedding text (note id and title) and the
+ * heading path of its section, so a retrieved chunk still says where it's from.
+ */
+public final class NoteChunker {
+
+    public static final int MAX_CHUNK_CHARS = 800;
+    public static final int OVERLAP_CHARS = 150;
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+
+    private NoteChunker() {
+    }
+
+    // Vector database id of chunk {@code index} of a note
+    public static String chunkId(int noteId, int index) {
+        return noteEmbeddingId(noteId) + "#" + index;
+    }
+
+    public static List<String> chunkIds(int noteId, int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(chunkId(noteId, i));
+        }
+        return ids;
+    }
+
+    // The id notes were stored under as a single vector, before chunking
+    public static String noteEmbeddingId(int noteId) {
+        return "note_" + noteId;
+    }
+
+    /**
+     * Splits text built by {@link Database#buildEmbeddingText}: everything before the first
+     * blank line is the header, the rest is the markdown body.
+     */
+    public static List<String> split(String embeddingText) {
+        int headerEnd = embeddingText.indexOf("\n\n");
+        String header = headerEnd < 0 ? "" : embeddingText.substring(0, headerEnd);
+        String body = headerEnd < 0 ? embeddingText : embeddingText.substring(headerEnd + 2);
+
+        List<String> chunks = new ArrayList<>();
+        for (Section section : sections(body)) {
+            for (String chunkBody : pack(section.blocks)) {
+                chunks.add(withContext(header, section.path, chunkBody));
+            }
+        }
+        if (chunks.isEmpty()) {
+            // Nothing but headings: still one chunk, so the note can be found
+            chunks.add(withContext(header, "", body.trim()));
+        }
+        return chunks;
+    }
+
+    private static String withContext(String header, String path, String chunkBody) {
+        StringBuilder text = new StringBuilder(header);
+        if (!path.isEmpty()) {
+            text.append(text.length() == 0 ? "" : "\n").append("Section: ").append(path);
+        }
+        if (text.length() > 0) {
+            text.append("\n\n");
+        }
+        return text.append(chunkBody).toString();
+    }
+
+    private static List<Section> sections(String body) {
+        List<Section> sections = new ArrayList<>();
+        List<String> headings = new ArrayList<>();
+        Section current = new Section("");
+        StringBuilder block = new StringBuilder();
+        boolean inFence = false;
+        for (String line : body.split("\r?\n", -1)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                inFence = !inFence;
+            }
+            Matcher heading = inFence ? null : HEADING.matcher(line);
+            if (heading != null && heading.matches()) {
+                current.addBlock(block);
+                sections.add(current);
+                int level = heading.group(1).length();
+                while (headings.size() >= level) {
+                    headings.remove(headings.size() - 1);
+                }
+                while (headings.size() < level - 1) {
+                    headings.add("");
+                }
+                headings.add(heading.group(2));
+                current = new Section(String.join(" > ", headings.stream().filter(h -> !h.isEmpty()).toList()));
+            } else if (!inFence && trimmed.isEmpty()) {
+                current.addBlock(block);
+            } else {
+                if (block.length() > 0) {
+                    block.append('\n');
+                }
+                block.append(line);
+            }
+        }
+        current.addBlock(block);
+        sections.add(current);
+        return sections;
+    }
+
+    // Greedily packs a section's blocks into chunk bodies, each starting with the tail of the previous one
+    private static List<String> pack(List<String> blocks) {
+        int pieceLimit = MAX_CHUNK_CHARS - OVERLAP_CHARS;
+        List<String> pieces = new ArrayList<>();
+        for (String block : blocks) {
+            if (block.length() <= pieceLimit) {
+                pieces.add(block);
+            } else {
+                pieces.addAll(splitLong(block, pieceLimit));
+            }
+        }
+
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean hasNewText = false;
+        for (String piece : pieces) {
+            if (hasNewText && current.length() + 2 + piece.length() > MAX_CHUNK_CHARS) {
+                String chunk = current.toString();
+                chunks.add(chunk);
+                current = new StringBuilder(overlapTail(chunk));
+                hasNewText = false;
+            }
+            if (current.length() > 0) {
+                current.append("\n\n");
+            }
+            current.append(piece);
+            hasNewText = true;
+        }
+        if (hasNewText) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    private static List<String> splitLong(String block, int limit) {
+        List<String> pieces = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String sentence : SENTENCE_END.split(block)) {
+            for (String part : hardSplit(sentence, limit)) {
+                if (current.length() > 0 && current.length() + 1 + part.length() > limit) {
+                    pieces.add(current.toString());
+                    current.setLength(0);
+                }
+                if (current.length() > 0) {
+                    current.append(' ');
+                }
+                current.append(part);
+            }
+        }
+        if (current.length() > 0) {
+            pieces.add(current.toString());
+        }
+        return pieces;
+    }
+
+    // Splits at the last whitespace before the limit, or at the limit if there is none
+    private static List<String> hardSplit(String text, int limit) {
+        List<String> parts = new ArrayList<>();
+        String rest = text;
+        while (rest.length() > limit) {
+            int cut = rest.lastIndexOf(' ', limit);
+            if (cut <= 0) {
+                cut = limit;
+            }
+            parts.add(rest.substring(0, cut).trim());
+            rest = rest.substring(cut).trim();
+        }
+        if (!rest.isEmpty()) {
+            parts.add(rest);
+        }
+        return parts;
+    }
+
+    // The last OVERLAP_CHARS of a chunk, starting at a sentence or at least a word
+    private static String overlapTail(String chunk) {
+        if (chunk.length() <= OVERLAP_CHARS) {
+            return chunk;
+        }
+        int from = chunk.length() - OVERLAP_CHARS;
+        Matcher sentence = SENTENCE_END.matcher(chunk);
+        if (sentence.find(from)) {
+            return chunk.substring(sentence.end());
+        }
+        int space = chunk.indexOf(' ', from);
+        return space < 0 ? "" : chunk.substring(space + 1);
+    }
+
+    private static class Section {
+        final String path;
+        final List<String> blocks = new ArrayList<>();
+
+        Section(String path) {
+            this.path = path;
+        }
+
+        void addBlock(StringBuilder block) {
+            if (block.toString().trim().length() > 0) {
+                blocks.add(block.toString());
+            }
+            block.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.notia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over note titles, content, tag names and category names.
+ *
+ * Each term maps to a sorted int[] of note ids. Every query word is treated as a
+ * prefix and all words must match, the same semantics as the FULLTEXT search in
+ * {@link Database}, so the search box can be answered without a MySQL round-trip.
+ *
+ * Term counts and note lengths are kept as well, so {@link #rank} can score notes with
+ * BM25 for keyword retrieval in the chat assistant.
+ */
+public class NoteSearchIndex {
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}_]+");
+    private static final int[] EMPTY = new int[0];
+    // BM25 term-frequency saturation and length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Question words that would otherwise match most notes; only dropped when ranking
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "can",
+            "did", "do", "does", "for", "from", "how", "i", "in", "is", "it", "me", "my", "of", "on", "or", "that",
+            "the", "this", "to", "was", "what", "when", "where", "which", "who", "why", "with", "you");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, int[]> postings = new TreeMap<>();
+    private final Map<Integer, Map<String, Integer>> textTerms = new HashMap<>();
+    private final Map<Integer, Set<String>> labelTerms = new HashMap<>();
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final Map<Integer, Integer> lengths = new HashMap<>();
+    private long totalLength = 0;
+    private volatile boolean ready = false;
+    private long modCount = 0;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Marks the index stale so callers fall back to SQL until the next rebuild
+    public void invalidate() {
+        ready = false;
+    }
+
+    public long modCount() {
+        lock.readLock().lock();
+        try {
+            return modCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole index with the given notes. Returns false (and changes nothing)
+     * if the index was modified after {@code expectedModCount} was read, since the
+     * loaded snapshot may then be missing that change.
+     */
+    public boolean rebuild(Collection<IndexedNote> notes, long expectedModCount) {
+        Map<String, List<Integer>> building = new HashMap<>();
+        Map<Integer, Map<String, Integer>> newTextTerms = new HashMap<>();
+        Map<Integer, Set<String>> newLabelTerms = new HashMap<>();
+        Map<Integer, String> newTitles = new HashMap<>();
+        Map<Integer, Integer> newLengths = new HashMap<>();
+        long newTotalLength = 0;
+
+        for (IndexedNote note : notes) {
+            Map<String, Integer> text = countTerms(note.title + " " + note.content);
+            Set<String> labels = tokenize(note.labels);
+            newTextTerms.put(note.id, text);
+            newLabelTerms.put(note.id, labels);
+            newTitles.put(note.id, note.title);
+            int length = length(text, labels);
+            newLengths.put(note.id, length);
+            newTotalLength += length;
+            for (String term : union(text.keySet(), labels)) {
+                building.computeIfAbsent(term, k -> new ArrayList<>()).add(note.id);
+            }
+        }
+
+        TreeMap<String, int[]> newPostings = new TreeMap<>();
+        for (Map.Entry<String, List<Integer>> entry : building.entrySet()) {
+            int[] ids = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(ids);
+            newPostings.put(entry.getKey(), ids);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (modCount != expectedModCount) {
+                return false;
+            }
+            postings.clear();
+            postings.putAll(newPostings);
+            textTerms.clear();
+            textTerms.putAll(newTextTerms);
+            labelTerms.clear();
+            labelTerms.putAll(newLabelTerms);
+            titles.clear();
+            titles.putAll(newTitles);
+            lengths.clear();
+            lengths.putAll(newLengths);
+            totalLength = newTotalLength;
+            // Results change even though no single note did
+            modCount++;
+            ready = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putNote(int noteId, String title, String content) {
+        lock.writeLock().lock();
+        try {
+            Set<String> before = allTerms(noteId);
+            modCount++;
+            textTerms.put(noteId, countTerms(title + " " + content));
+            titles.put(noteId, title);
+            updatePostings(noteId, before, allTerms(noteId));
+            updateLength(noteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setLabels(int noteId, String labels) {
+        lock.writeLock().lock();
+        try {
+            if (!titles.containsKey(noteId)) {
+                return;
+            }
+            Set<String> before = allTerms(noteId);
+            modCount++;
+            labelTerms.put(noteId, tokenize(labels));
+            updatePostings(noteId, before, allTerms(noteId));
+            updateLength(noteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeNote(int noteId) {
+        lock.writeLock().lock();
+        try {
+            modCount++;
+            updatePostings(noteId, allTerms(noteId), Collections.emptySet());
+            textTerms.remove(noteId);
+            labelTerms.remove(noteId);
+            titles.remove(noteId);
+            Integer length = lengths.remove(noteId);
+            if (length != null) {
+                totalLength -= length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns notes matching every word of the query as a prefix, title matches first.
+     */
+    public List<Note> search(String query, int limit) {
+        List<String> words = new ArrayList<>(tokenize(query));
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] matches = null;
+            for (String word : words) {
+                int[] ids = prefixPostings(word);
+                matches = matches == null ? ids : intersect(matches, ids);
+                if (matches.length == 0) {
+                    return new ArrayList<>();
+                }
+            }
+
+            List<Note> titleHits = new ArrayList<>();
+            List<Note> otherHits = new ArrayList<>();
+            for (int id : matches) {
+                String title = titles.get(id);
+                String lowerTitle = title == null ? "" : title.toLowerCase(Locale.ROOT);
+                boolean inTitle = true;
+                for (String word : words) {
+                    if (!lowerTitle.contains(word)) {
+                        inTitle = false;
+                        break;
+                    }
+                }
+                (inTitle ? titleHits : otherHits).add(new Note(id, title));
+                if (titleHits.size() >= limit) {
+                    break;
+                }
+            }
+            titleHits.addAll(otherHits);
+            return titleHits.size() > limit ? new ArrayList<>(titleHits.subList(0, limit)) : titleHits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores notes containing any word of the query with BM25 and returns the best
+     * {@code limit}, highest score first. Unlike {@link #search}, words match whole
+     * terms only, and common question words are ignored unless nothing else is left.
+     */
+    public List<ScoredNote> rank(String query, int limit) {
+        Set<String> words = tokenize(query);
+        Set<String> meaningful = new HashSet<>(words);
+        meaningful.removeAll(STOP_WORDS);
+        if (!meaningful.isEmpty()) {
+            words = meaningful;
+        }
+
+        lock.readLock().lock();
+        try {
+            int noteCount = titles.size();
+            if (words.isEmpty() || noteCount == 0) {
+                return new ArrayList<>();
+            }
+            double averageLength = Math.max(1.0, totalLength / (double) noteCount);
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String word : words) {
+                int[] ids = postings.get(word);
+                if (ids == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (noteCount - ids.length + 0.5) / (ids.length + 0.5));
+                for (int id : ids) {
+                    int tf = textTerms.getOrDefault(id, Collections.emptyMap()).getOrDefault(word, 0)
+                            + (labelTerms.getOrDefault(id, Collections.emptySet()).contains(word) ? 1 : 0);
+                    double norm = K1 * (1 - B + B * lengths.getOrDefault(id, 0) / averageLength);
+                    scores.merge(id, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                }
+            }
+
+            List<ScoredNote> ranked = new ArrayList<>(scores.size());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                ranked.add(new ScoredNote(new Note(entry.getKey(), titles.get(entry.getKey())), entry.getValue()));
+            }
+            ranked.sort(Comparator.comparingDouble((ScoredNote scored) -> scored.score).reversed());
+            return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher m = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (m.find()) {
+            terms.add(m.group());
+        }
+        return terms;
+    }
+
+    static Map<String, Integer> countTerms(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (text == null) {
+            return counts;
+        }
+        Matcher m = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (m.find()) {
+            counts.merge(m.group(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static int length(Map<String, Integer> text, Set<String> labels) {
+        int length = labels.size();
+        for (int count : text.values()) {
+            length += count;
+        }
+        return length;
+    }
+
+    private void updateLength(int noteId) {
+        int length = length(textTerms.getOrDefault(noteId, Collections.emptyMap()),
+                labelTerms.getOrDefault(noteId, Collections.emptySet()));
+        Integer before = lengths.put(noteId, length);
+        totalLength += length - (before == null ? 0 : before);
+    }
+
+    private Set<String> allTerms(int noteId) {
+        return union(textTerms.getOrDefault(noteId, Collections.emptyMap()).keySet(),
+                labelTerms.getOrDefault(noteId, Collections.emptySet()));
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> all = new HashSet<>(a);
+        all.addAll(b);
+        return all;
+    }
+
+    private void updatePostings(int noteId, Set<String> before, Set<String> after) {
+        for (String term : before) {
+            if (!after.contains(term)) {
+                int[] ids = postings.get(term);
+                if (ids != null) {
+                    int[] remaining = without(ids, noteId);
+                    if (remaining.length == 0) {
+                        postings.remove(term);
+                    } else {
+                        postings.put(term, remaining);
+                    }
+                }
+            }
+        }
+        for (String term : after) {
+            if (!before.contains(term)) {
+                postings.put(term, with(postings.getOrDefault(term, EMPTY), noteId));
+            }
+        }
+    }
+
+    private int[] prefixPostings(String prefix) {
+        SortedMap<String, int[]> range = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.isEmpty()) {
+            return EMPTY;
+        }
+        if (range.size() == 1) {
+            return range.values().iterator().next();
+        }
+        int[] merged = EMPTY;
+        for (int[] ids : range.values()) {
+            merged = union(merged, ids);
+        }
+        return merged;
+    }
+
+    private static int[] with(int[] ids, int id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) {
+            return ids;
+        }
+        int insertAt = -pos - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, insertAt);
+        result[insertAt] = id;
+        System.arraycopy(ids, insertAt, result, insertAt + 1, ids.length - insertAt);
+        return result;
+    }
+
+    private static int[] without(int[] ids, int id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos < 0) {
+            return ids;
+        }
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, pos);
+        System.arraycopy(ids, pos + 1, result, pos, ids.length - pos - 1);
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * A note as loaded for indexing.
+     */
+    public static class IndexedNote {
+        final int id;
+        final String title;
+        final String content;
+        final String labels;
+
+        public IndexedNote(int id, String title, String content, String labels) {
+            this.id = id;
+            this.title = title;
+            this.content = content;
+            this.labels = labels;
+        }
+    }
+
+    /**
+     * A note with its BM25 score for a query.
+     */
+    public static class ScoredNote {
+        public final Note note;
+        public final double score;
+
+        public ScoredNote(Note note, double score) {
+            this.note = note;
+            this.score = score;
+        }
+    }
+}
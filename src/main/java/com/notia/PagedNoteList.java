@@ -0,0 +1,214 @@
+package com.notia;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backing list for the note ListView that loads notes a page at a time.
+ *
+ * In "all notes" mode only the first page is fetched up front; cells call
+ * {@link #ensureLoaded(int)} as they are shown, and the next page is fetched
+ * with a keyset query once the user scrolls near the end of what is loaded.
+ * Pages are fetched off the FX thread and appended when they arrive.
+ * Search and filter results are shown as a plain, fully loaded list.
+ *
+ * Note changes are applied as targeted patches via {@link #applyChange}
+ * rather than reloading, so only the affected cell is refreshed. Notes are
+ * found through an id to index map, rebuilt only after a change that shifts
+ * positions. A note inserted while pages remain is shown at the end right
+ * away, and pages that arrive later go in front of it.
+ */
+public class PagedNoteList {
+
+    private final ObservableList<Note> items = FXCollections.observableArrayList();
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final Database.NoteOrder order;
+
+    // Position of each listed note; stale after removals or inserts before the end until reindexed
+    private final Map<Integer, Integer> indexById = new HashMap<>();
+    private boolean indexStale = false;
+    // Notes inserted at the end while pages were still to come; pages are added before them
+    private int insertedAhead = 0;
+
+    private final AsyncDatabase.LatestRequest pageRequest = new AsyncDatabase.LatestRequest();
+    private boolean paging = false;
+    private boolean hasMore = false;
+    private boolean loading = false;
+
+    public PagedNoteList(int pageSize, Database.NoteOrder order) {
+        this.pageSize = pageSize;
+        this.prefetchDistance = Math.max(1, pageSize / 4);
+        this.order = order;
+    }
+
+    public ObservableList<Note> getItems() {
+        return items;
+    }
+
+    // Shows all notes, starting again from the first page
+    public void showAll() {
+        pageRequest.cancel();
+        paging = true;
+        hasMore = true;
+        loading = false;
+        insertedAhead = 0;
+        items.clear();
+        indexById.clear();
+        indexStale = false;
+        loadNextPage();
+    }
+
+    // Shows a fixed result set (search, category or tag filter) without paging
+    public void showResults(List<Note> results) {
+        pageRequest.cancel();
+        paging = false;
+        hasMore = false;
+        loading = false;
+        insertedAhead = 0;
+        items.setAll(results);
+        indexStale = true;
+    }
+
+    public boolean isShowingAll() {
+        return paging;
+    }
+
+    public boolean hasMore() {
+        return paging && hasMore;
+    }
+
+    public Note findById(int noteId) {
+        int index = indexOf(noteId);
+        return index < 0 ? null : items.get(index);
+    }
+
+    public void applyChange(NoteChangeEvent event) {
+        int index = indexOf(event.getNoteId());
+        switch (event.getType()) {
+            case DELETED:
+                if (index >= 0) {
+                    remove(index);
+                }
+                break;
+            case UPDATED:
+                Note updated = listEntry(event.getNote());
+                if (order == Database.NoteOrder.UPDATED_ON && paging) {
+                    // Most recently updated first: the note moves to the top
+                    if (index >= 0) {
+                        remove(index);
+                    }
+                    items.add(0, updated);
+                    indexStale = true;
+                } else if (index >= 0) {
+                    items.set(index, updated);
+                }
+                break;
+            case INSERTED:
+                if (!paging || index >= 0) {
+                    // Filtered results: we can't tell if the new note matches, leave them alone
+                    break;
+                }
+                if (order == Database.NoteOrder.UPDATED_ON) {
+                    items.add(0, listEntry(event.getNote()));
+                    indexStale = true;
+                } else {
+                    // Ordered by id, so a new note belongs at the end, after any pages still to come
+                    append(listEntry(event.getNote()));
+                    if (hasMore) {
+                        insertedAhead++;
+                    }
+                }
+                break;
+        }
+    }
+
+    // The list only needs what getNotesPage returns, not the note body
+    private static Note listEntry(Note note) {
+        return new Note(note.getId(), note.getTitle(), null, null, note.getUpdatedOn(), false, false, 0);
+    }
+
+    private int indexOf(int noteId) {
+        if (indexStale) {
+            indexById.clear();
+            for (int i = 0; i < items.size(); i++) {
+                indexById.put(items.get(i).getId(), i);
+            }
+            indexStale = false;
+        }
+        Integer index = indexById.get(noteId);
+        return index == null ? -1 : index;
+    }
+
+    private void append(Note note) {
+        items.add(note);
+        if (!indexStale) {
+            indexById.put(note.getId(), items.size() - 1);
+        }
+    }
+
+    private void remove(int index) {
+        if (index >= items.size() - insertedAhead) {
+            insertedAhead--;
+        }
+        Note removed = items.remove(index);
+        if (index == items.size()) {
+            // Nothing moved
+            indexById.remove(removed.getId());
+        } else {
+            indexStale = true;
+        }
+    }
+
+    public void ensureLoaded(int index) {
+        if (paging && hasMore && !loading && index >= items.size() - prefetchDistance) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        loading = true;
+        // The keyset cursor is the last paged note, not a note inserted after it
+        int lastPaged = items.size() - insertedAhead - 1;
+        Note last = lastPaged < 0 ? null : items.get(lastPaged);
+        pageRequest.submit(AsyncDatabase.getNotesPage(last, pageSize, order), page -> {
+            loading = false;
+            hasMore = page.size() == pageSize;
+            addPage(page);
+        }, error -> {
+            loading = false;
+            hasMore = false;
+            insertedAhead = 0;
+            System.err.println("Error loading notes: " + error.getMessage());
+        });
+    }
+
+    private void addPage(List<Note> page) {
+        if (insertedAhead == 0) {
+            for (Note note : page) {
+                append(note);
+            }
+            return;
+        }
+        // Notes inserted ahead of paging are already listed; the rest of the page goes in front of them
+        int insertAt = items.size() - insertedAhead;
+        List<Note> fresh = new ArrayList<>(page.size());
+        for (Note note : page) {
+            if (indexOf(note.getId()) >= 0) {
+                insertedAhead--;
+            } else {
+                fresh.add(note);
+            }
+        }
+        if (!hasMore) {
+            insertedAhead = 0;
+        }
+        items.addAll(insertAt, fresh);
+        indexStale = true;
+    }
+}
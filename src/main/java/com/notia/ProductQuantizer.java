@@ -0,0 +1,211 @@
+package com.notia;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Product quantization: the vector is split into equal subspaces and each slice is
+ * replaced by the index of its nearest centroid in that subspace's 256-entry codebook,
+ * so a vector costs one byte per subspace (48 bytes for MiniLM's 384 dimensions with
+ * the default 48 subspaces, against 1536 as float32).
+ *
+ * Codes are scored by asymmetric distance: per query, the dot product of each query
+ * slice with every centroid is computed once into a lookup table, and a code's score
+ * is the sum of one table entry per subspace.
+ *
+ * Codebooks are trained with k-means on a sample of the stored vectors.
+ */
+public class ProductQuantizer implements VectorQuantizer {
+
+    static final byte TYPE = 'P';
+    public static final int CENTROIDS = 256;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    // codebooks[s][c * subDimension + i] is dimension i of centroid c in subspace s
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int dimension, int subspaces, float[][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Trains codebooks on {@code sample}, which needs at least {@link #CENTROIDS} vectors.
+     * {@code subspaces} must divide the dimension.
+     */
+    public static ProductQuantizer train(List<float[]> sample, int subspaces, int iterations, Random random) {
+        if (sample.size() < CENTROIDS) {
+            throw new IllegalArgumentException("Need at least " + CENTROIDS + " vectors to train, got " + sample.size());
+        }
+        int dimension = sample.get(0).length;
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException(subspaces + " subspaces don't divide " + dimension + " dimensions");
+        }
+        int subDimension = dimension / subspaces;
+        float[][] codebooks = new float[subspaces][];
+        int[] assignment = new int[sample.size()];
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = kMeans(sample, s * subDimension, subDimension, iterations, assignment, random);
+        }
+        return new ProductQuantizer(dimension, subspaces, codebooks);
+    }
+
+    private static float[] kMeans(List<float[]> sample, int from, int width, int iterations, int[] assignment,
+                                  Random random) {
+        int n = sample.size();
+        float[] centroids = new float[CENTROIDS * width];
+        // Seed with distinct random sample points
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int c = 0; c < CENTROIDS; c++) {
+            int pick = c + random.nextInt(n - c);
+            int tmp = order[c];
+            order[c] = order[pick];
+            order[pick] = tmp;
+            System.arraycopy(sample.get(order[c]), from, centroids, c * width, width);
+        }
+
+        float[] sums = new float[CENTROIDS * width];
+        int[] counts = new int[CENTROIDS];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int i = 0; i < n; i++) {
+                assignment[i] = nearest(centroids, sample.get(i), from, width);
+            }
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                float[] vector = sample.get(i);
+                int base = assignment[i] * width;
+                for (int d = 0; d < width; d++) {
+                    sums[base + d] += vector[from + d];
+                }
+                counts[assignment[i]]++;
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (counts[c] == 0) {
+                    // Empty cluster: restart it on a random point
+                    System.arraycopy(sample.get(random.nextInt(n)), from, centroids, c * width, width);
+                    continue;
+                }
+                for (int d = 0; d < width; d++) {
+                    centroids[c * width + d] = sums[c * width + d] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearest(float[] centroids, float[] vector, int from, int width) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < CENTROIDS; c++) {
+            int base = c * width;
+            float distance = 0;
+            for (int d = 0; d < width; d++) {
+                float diff = vector[from + d] - centroids[base + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    @Override
+    public int codeBytes() {
+        return subspaces;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[offset + s] = (byte) nearest(codebooks[s], vector, s * subDimension, subDimension);
+        }
+    }
+
+    @Override
+    public QueryScorer scorer(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            float[] codebook = codebooks[s];
+            int from = s * subDimension;
+            for (int c = 0; c < CENTROIDS; c++) {
+                float dot = 0;
+                for (int d = 0; d < subDimension; d++) {
+                    dot += query[from + d] * codebook[c * subDimension + d];
+                }
+                table[s * CENTROIDS + c] = dot;
+            }
+        }
+        return (codes, offset) -> {
+            float score = 0;
+            for (int s = 0; s < subspaces; s++) {
+                score += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+            }
+            return score;
+        };
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(TYPE);
+        out.writeInt(dimension);
+        out.writeInt(subspaces);
+        for (float[] codebook : codebooks) {
+            for (float v : codebook) {
+                out.writeFloat(v);
+            }
+        }
+    }
+
+    static ProductQuantizer readBody(DataInput in) throws IOException {
+        int dimension = in.readInt();
+        int subspaces = in.readInt();
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IOException("Corrupt product quantizer");
+        }
+        float[][] codebooks = new float[subspaces][CENTROIDS * (dimension / subspaces)];
+        for (float[] codebook : codebooks) {
+            for (int i = 0; i < codebook.length; i++) {
+                codebook[i] = in.readFloat();
+            }
+        }
+        return new ProductQuantizer(dimension, subspaces, codebooks);
+    }
+
+    // The largest subspace count up to {@code requested} that divides {@code dimension}
+    public static int fitSubspaces(int dimension, int requested) {
+        for (int s = Math.min(requested, dimension); s > 1; s--) {
+            if (dimension % s == 0) {
+                return s;
+            }
+        }
+        return 1;
+    }
+
+    @Override
+    public String toString() {
+        return "pq" + subspaces;
+    }
+}
@@ -0,0 +1,186 @@
+package com.notia;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures what int8 and product quantization cost in recall on the notes in the
+ * database: every note is embedded (through the embedding cache, so notes that are
+ * already indexed aren't re-embedded), note titles are used as queries, and the top k
+ * found by each quantizer is compared with the exact float32 top k, both on the codes
+ * alone and after re-ranking the shortlist with the full vectors as
+ * {@link LocalEmbeddingStore} does.
+ *
+ * Run with:
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.notia.QuantizationEval -Dexec.args="10 200"
+ * </pre>
+ * (arguments: k and the maximum number of queries). Uses the same MYSQL_* settings as the app.
+ */
+public class QuantizationEval {
+
+    private static final int EMBED_BATCH_SIZE = 64;
+    private static final int PAGE_SIZE = 500;
+    private static final int[] PQ_SUBSPACES = {24, 48, 96};
+    private static final int[] RERANK_FACTORS = {2, LocalEmbeddingStore.RERANK_FACTOR, 8};
+    private static final int PQ_TRAINING_ITERATIONS = 8;
+
+    public static void main(String[] args) {
+        int k = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int maxQueries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        VectorDB vectorDB = new VectorDB(new InMemoryEmbeddingStore<>());
+        vectorDB.setEmbeddingCache(new EmbeddingCache(Database.EMBEDDING_MODEL_NAME));
+        List<String> texts = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        int afterId = 0;
+        List<Database.EmbeddingState> page;
+        do {
+            page = Database.getEmbeddingStates(afterId, PAGE_SIZE);
+            for (Database.EmbeddingState state : page) {
+                afterId = state.noteId;
+                if (state.text != null) {
+                    texts.add(state.text);
+                    String title = titleOf(state.text);
+                    if (title != null) {
+                        titles.add(title);
+                    }
+                }
+            }
+        } while (page.size() == PAGE_SIZE);
+        if (texts.size() <= k) {
+            System.out.println("Only " + texts.size() + " notes with content; need more than k=" + k + " to evaluate");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        float[][] vectors = embed(vectorDB, texts);
+        float[][] queries;
+        if (titles.size() >= 20) {
+            Collections.shuffle(titles, new Random(7));
+            queries = embed(vectorDB, titles.subList(0, Math.min(maxQueries, titles.size())));
+        } else {
+            // Too few titled notes; query with the notes themselves
+            queries = new float[Math.min(maxQueries, vectors.length)][];
+            System.arraycopy(vectors, 0, queries, 0, queries.length);
+        }
+        int dimension = vectors[0].length;
+        System.out.printf("Notes: %d, queries: %d, k: %d, dimension: %d (embedded in %.1f s)%n",
+                vectors.length, queries.length, k, dimension, (System.currentTimeMillis() - start) / 1e3);
+
+        List<Set<Integer>> truth = new ArrayList<>();
+        for (float[] query : queries) {
+            truth.add(ids(TopK.scan(vectors.length, k, node -> true, node -> VectorMath.dot(query, vectors[node]))));
+        }
+
+        StringBuilder header = new StringBuilder(String.format("%-10s %12s %12s %14s", "codes", "bytes/vector",
+                "total", "recall (codes)"));
+        for (int factor : RERANK_FACTORS) {
+            header.append(String.format(" %12s", "rerank x" + factor));
+        }
+        System.out.println(header);
+        System.out.printf("%-10s %12d %12s %14.3f%n", "float32", dimension * Float.BYTES,
+                megabytes((long) vectors.length * dimension * Float.BYTES), 1.0);
+
+        report(new ScalarQuantizer(dimension), vectors, queries, truth, k);
+        if (vectors.length < ProductQuantizer.CENTROIDS) {
+            System.out.println("Skipping product quantization: needs at least " + ProductQuantizer.CENTROIDS + " notes");
+            return;
+        }
+        List<float[]> sample = List.of(vectors);
+        Set<Integer> tried = new HashSet<>();
+        for (int requested : PQ_SUBSPACES) {
+            int subspaces = ProductQuantizer.fitSubspaces(dimension, requested);
+            if (tried.add(subspaces)) {
+                report(ProductQuantizer.train(sample, subspaces, PQ_TRAINING_ITERATIONS, new Random(7)),
+                        vectors, queries, truth, k);
+            }
+        }
+    }
+
+    private static void report(VectorQuantizer quantizer, float[][] vectors, float[][] queries,
+                               List<Set<Integer>> truth, int k) {
+        QuantizedCodes codes = new QuantizedCodes(quantizer, vectors.length);
+        for (float[] vector : vectors) {
+            codes.append(vector);
+        }
+        StringBuilder line = new StringBuilder(String.format("%-10s %12d %12s %14.3f", quantizer,
+                quantizer.codeBytes(), megabytes(codes.memoryBytes()),
+                recall(codes, vectors, queries, truth, k, 1)));
+        for (int factor : RERANK_FACTORS) {
+            line.append(String.format(" %12.3f", recall(codes, vectors, queries, truth, k, factor)));
+        }
+        System.out.println(line);
+    }
+
+    // Shortlists k * factor on the codes and keeps the best k by full-precision score (factor 1: codes only)
+    private static double recall(QuantizedCodes codes, float[][] vectors, float[][] queries,
+                                 List<Set<Integer>> truth, int k, int factor) {
+        int hits = 0;
+        for (int q = 0; q < queries.length; q++) {
+            float[] query = queries[q];
+            TopK shortlist = codes.topK(query, k * factor, vectors.length, node -> true);
+            Set<Integer> found;
+            if (factor == 1) {
+                found = ids(shortlist);
+            } else {
+                int[] nodes = new int[shortlist.size()];
+                int count = shortlist.drainDescending(nodes, new float[nodes.length]);
+                TopK reranked = new TopK(k);
+                for (int i = 0; i < count; i++) {
+                    reranked.offer(nodes[i], VectorMath.dot(query, vectors[nodes[i]]));
+                }
+                found = ids(reranked);
+            }
+            for (int id : found) {
+                if (truth.get(q).contains(id)) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (double) (truth.stream().mapToInt(Set::size).sum());
+    }
+
+    private static float[][] embed(VectorDB vectorDB, List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        for (int from = 0; from < texts.size(); from += EMBED_BATCH_SIZE) {
+            List<Embedding> embeddings = vectorDB.embedAll(texts.subList(from, Math.min(from + EMBED_BATCH_SIZE, texts.size())));
+            for (int i = 0; i < embeddings.size(); i++) {
+                vectors[from + i] = LocalEmbeddingStore.normalize(embeddings.get(i).vector());
+            }
+        }
+        return vectors;
+    }
+
+    // The title line of Database.buildEmbeddingText, or null for untitled notes
+    private static String titleOf(String embeddingText) {
+        for (String line : embeddingText.split("\n", 3)) {
+            if (line.startsWith("Title: ")) {
+                String title = line.substring("Title: ".length()).trim();
+                return title.isEmpty() || title.equals("Untitled") ? null : title;
+            }
+        }
+        return null;
+    }
+
+    private static Set<Integer> ids(TopK top) {
+        int[] nodes = new int[top.size()];
+        int count = top.drainDescending(nodes, new float[nodes.length]);
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            result.add(nodes[i]);
+        }
+        return result;
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.2f MB", bytes / (1024.0 * 1024.0));
+    }
+}
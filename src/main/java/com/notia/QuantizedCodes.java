@@ -0,0 +1,146 @@
+package com.notia;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Compressed codes of a vector storage, one per slot, packed into a single heap array so
+ * a scan over them touches a fraction of the memory the full vectors would.
+ *
+ * Appends are serialized by the caller; reads of published slots are safe from any
+ * thread (the array is replaced, never resized in place, and published before the size).
+ *
+ * Codes are saved to an append-only file: a header with the quantizer, then the codes.
+ * {@link #sync} only writes the codes appended since the last call.
+ */
+public class QuantizedCodes {
+
+    private static final int MAGIC = 0x4E514344; // "NQCD"
+    private static final int VERSION = 1;
+
+    private final VectorQuantizer quantizer;
+    private final int codeBytes;
+    private volatile byte[] codes;
+    private volatile int size;
+    private Path syncedFile;
+    private int syncedCount;
+
+    public QuantizedCodes(VectorQuantizer quantizer, int initialCapacity) {
+        this.quantizer = quantizer;
+        this.codeBytes = quantizer.codeBytes();
+        this.codes = new byte[Math.max(1, initialCapacity) * codeBytes];
+    }
+
+    public VectorQuantizer quantizer() {
+        return quantizer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Heap used by the codes themselves
+    public long memoryBytes() {
+        return (long) size * codeBytes;
+    }
+
+    public void append(float[] vector) {
+        int slot = size;
+        byte[] current = codes;
+        if ((slot + 1) * codeBytes > current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        quantizer.encode(vector, current, slot * codeBytes);
+        codes = current;
+        size = slot + 1;
+    }
+
+    /**
+     * Scores the first {@code count} codes against the query and returns the best {@code k}.
+     */
+    public TopK topK(float[] query, int k, int count, IntPredicate accept) {
+        VectorQuantizer.QueryScorer scorer = quantizer.scorer(query);
+        byte[] snapshot = codes;
+        return TopK.scan(count, k, accept, slot -> scorer.score(snapshot, slot * codeBytes));
+    }
+
+    /**
+     * Appends the codes added since the last sync to {@code file}, writing the header
+     * first if the file is new or belonged to another generation.
+     */
+    public void sync(Path file, long generation) throws IOException {
+        int count = size;
+        byte[] snapshot = codes;
+        if (!file.equals(syncedFile) || !Files.exists(file)) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(header)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                quantizer.write(out);
+            }
+            Files.write(file, header.toByteArray());
+            syncedFile = file;
+            syncedCount = 0;
+        }
+        if (count > syncedCount) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot, syncedCount * codeBytes, (count - syncedCount) * codeBytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            syncedCount = count;
+        }
+    }
+
+    /**
+     * Reads up to {@code count} codes saved by {@link #sync}. Fails if the file belongs to
+     * another generation; may return fewer codes than asked for if the last sync was cut short.
+     */
+    public static QuantizedCodes read(Path file, long expectedGeneration, int count) throws IOException {
+        long length = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a Notia codes file or unsupported version");
+            }
+            if (in.readLong() != expectedGeneration) {
+                throw new IOException("codes file belongs to another index generation");
+            }
+            VectorQuantizer quantizer = VectorQuantizer.read(in);
+            long headerBytes = 4 + 4 + 8 + serializedSize(quantizer);
+            int stored = (int) Math.min(count, (length - headerBytes) / quantizer.codeBytes());
+            QuantizedCodes result = new QuantizedCodes(quantizer, Math.max(stored, 1024));
+            in.readFully(result.codes, 0, stored * result.codeBytes);
+            result.size = stored;
+            result.syncedFile = file;
+            result.syncedCount = stored;
+            if (length != headerBytes + (long) stored * result.codeBytes) {
+                // Codes past what the index knows about, or a torn write; drop them so later syncs line up
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(headerBytes + (long) stored * result.codeBytes);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static int serializedSize(VectorQuantizer quantizer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            quantizer.write(out);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,94 @@
+package com.notia;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * int8 scalar quantization: each vector becomes one signed byte per dimension plus a
+ * float scale (value = byte * scale), about a quarter of the float32 size. Needs no training.
+ */
+public class ScalarQuantizer implements VectorQuantizer {
+
+    static final byte TYPE = 'S';
+
+    private final int dimension;
+    private final ThreadLocal<byte[]> scratch;
+
+    public ScalarQuantizer(int dimension) {
+        this.dimension = dimension;
+        this.scratch = ThreadLocal.withInitial(() -> new byte[dimension]);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    // The scale as four little-endian bytes, then the quantized values
+    @Override
+    public int codeBytes() {
+        return Float.BYTES + dimension;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        float scale = quantize(vector, codes, offset + Float.BYTES);
+        int bits = Float.floatToIntBits(scale);
+        codes[offset] = (byte) bits;
+        codes[offset + 1] = (byte) (bits >>> 8);
+        codes[offset + 2] = (byte) (bits >>> 16);
+        codes[offset + 3] = (byte) (bits >>> 24);
+    }
+
+    @Override
+    public QueryScorer scorer(float[] query) {
+        return (codes, offset) -> {
+            byte[] values = scratch.get();
+            System.arraycopy(codes, offset + Float.BYTES, values, 0, dimension);
+            int bits = (codes[offset] & 0xFF) | (codes[offset + 1] & 0xFF) << 8
+                    | (codes[offset + 2] & 0xFF) << 16 | (codes[offset + 3] & 0xFF) << 24;
+            return score(query, values, Float.intBitsToFloat(bits));
+        };
+    }
+
+    /**
+     * Writes the quantized values of {@code vector} to {@code values} from {@code offset}
+     * and returns their scale. {@link MappedVectorStorage} stores INT8 records with this too.
+     */
+    static float quantize(float[] vector, byte[] values, int offset) {
+        float max = 0;
+        for (float v : vector) {
+            max = Math.max(max, Math.abs(v));
+        }
+        float scale = max == 0 ? 0 : max / 127f;
+        for (int i = 0; i < vector.length; i++) {
+            values[offset + i] = scale == 0 ? 0 : (byte) Math.round(vector[i] / scale);
+        }
+        return scale;
+    }
+
+    // Dot product of the query with a vector quantized by quantize()
+    static float score(float[] query, byte[] values, float scale) {
+        return VectorMath.dot(query, values) * scale;
+    }
+
+    static float dequantize(byte value, float scale) {
+        return value * scale;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(TYPE);
+        out.writeInt(dimension);
+    }
+
+    static ScalarQuantizer readBody(DataInput in) throws IOException {
+        return new ScalarQuantizer(in.readInt());
+    }
+
+    @Override
+    public String toString() {
+        return "int8";
+    }
+}
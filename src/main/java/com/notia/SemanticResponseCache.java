@@ -0,0 +1,415 @@
+package com.notia;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.Result;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.ToolExecution;
+import shared.Assistant;
+import shared.StreamingAssistant;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Answers a question with a previous answer when an earlier question was close enough
+ * in meaning: question embeddings (through the shared query cache, see
+ * {@link EmbeddingService}) are compared by cosine similarity, and the best match at or
+ * above the threshold, asked under the same retrieval scope, is returned without
+ * retrieval or a Gemini call.
+ *
+ * Only the first question of a conversation is looked up and cached: the cache is shared
+ * by all conversations, and a question asked after earlier turns may depend on them.
+ *
+ * Every answer remembers the notes its retrieved context came from. Updating or deleting
+ * one of them through {@link Database} drops the answer; answers that used no notes are
+ * not cached, since a note added later may be what they were missing. Entries also
+ * expire after a TTL and the least recently used go first when the cache is full.
+ */
+public class SemanticResponseCache implements NoteChangeListener {
+
+    // Questions take seconds, so only the last few changes can matter to one still being answered
+    private static final int MAX_TRACKED_CHANGES = 1024;
+
+    private final int maxEntries;
+    private final float threshold;
+    private final long ttlMillis;
+    // Guarded by itself; insertion order is refreshed on every hit, so the first entry is the least recently used
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    // Sequence number of the last change to each note, to reject answers computed from a note changed meanwhile.
+    // Insertion order is change order; beyond MAX_TRACKED_CHANGES the oldest are forgotten, and prunedUpTo
+    // makes answers to questions asked before a forgotten change uncacheable instead
+    private final LinkedHashMap<Integer, Long> lastChanged = new LinkedHashMap<>();
+    private long prunedUpTo = 0;
+    private long sequence = 0;
+    private long nextId = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SemanticResponseCache(int maxEntries, float threshold, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.threshold = threshold;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * An assistant for {@link #wrap(SourcedAssistant, Supplier, Supplier)} that returns
+     * the answer with its sources, as {@link dev.langchain4j.service.AiServices} does for
+     * methods returning {@link Result}.
+     */
+    public interface SourcedAssistant {
+        Result<String> chat(String userMessage);
+    }
+
+    /**
+     * An assistant that answers from the cache when it can and caches {@code delegate}'s
+     * answers otherwise. Cached answers are added to the conversation's memory, looked up
+     * on each call, so follow-up questions still see them.
+     */
+    public Assistant wrap(SourcedAssistant delegate, Supplier<ChatMemory> memory, Supplier<Object> scope) {
+        return userMessage -> {
+            if (hasHistory(memory.get())) {
+                return delegate.chat(userMessage).content();
+            }
+            Probe probe = lookup(userMessage, scope.get());
+            if (probe.answer != null) {
+                remember(memory, userMessage, probe.answer);
+                return probe.answer;
+            }
+            Result<String> result = delegate.chat(userMessage);
+            put(probe, result.content(), result.sources());
+            return result.content();
+        };
+    }
+
+    public StreamingAssistant wrapStreaming(StreamingAssistant delegate, Supplier<ChatMemory> memory, Supplier<Object> scope) {
+        return userMessage -> {
+            if (hasHistory(memory.get())) {
+                return delegate.chat(userMessage);
+            }
+            Probe probe = lookup(userMessage, scope.get());
+            if (probe.answer != null) {
+                return new CachedTokenStream(probe.answer, () -> remember(memory, userMessage, probe.answer));
+            }
+            return new RecordingTokenStream(delegate.chat(userMessage), probe);
+        };
+    }
+
+    // A follow-up ("why?", "and the second one?") means something else in every conversation
+    private static boolean hasHistory(ChatMemory memory) {
+        for (ChatMessage message : memory.messages()) {
+            if (!(message instanceof SystemMessage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void remember(Supplier<ChatMemory> memorySupplier, String userMessage, String answer) {
+        ChatMemory memory = memorySupplier.get();
+        memory.add(UserMessage.from(userMessage));
+        memory.add(AiMessage.from(answer));
+    }
+
+    Probe lookup(String question, Object scope) {
+        long startedAt;
+        synchronized (entries) {
+            startedAt = sequence;
+        }
+        if (maxEntries <= 0) {
+            return new Probe(null, scope, startedAt, null);
+        }
+        float[] vector = LocalEmbeddingStore.normalize(EmbeddingService.get().queryModel().embed(question).content().vector());
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry best = null;
+            float bestScore = threshold;
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (now - entry.createdAt >= ttlMillis) {
+                    it.remove();
+                    continue;
+                }
+                if (Objects.equals(entry.scope, scope)) {
+                    float score = VectorMath.dot(vector, entry.vector);
+                    if (score >= bestScore) {
+                        best = entry;
+                        bestScore = score;
+                    }
+                }
+            }
+            if (best != null) {
+                entries.remove(best.id);
+                entries.put(best.id, best);
+                hits.incrementAndGet();
+                System.out.printf("Response cache hit (similarity %.3f)%n", bestScore);
+                return new Probe(vector, scope, startedAt, best.answer);
+            }
+        }
+        misses.incrementAndGet();
+        return new Probe(vector, scope, startedAt, null);
+    }
+
+    void put(Probe probe, String answer, List<Content> sources) {
+        if (probe.vector == null || answer == null || answer.trim().isEmpty() || sources == null || sources.isEmpty()) {
+            return;
+        }
+        Set<Integer> noteIds = new HashSet<>();
+        for (Content source : sources) {
+            Integer noteId = source.textSegment().metadata().getInteger(VectorDB.METADATA_NOTE_ID);
+            if (noteId == null) {
+                // Stored before vectors carried their note id; couldn't be invalidated
+                return;
+            }
+            noteIds.add(noteId);
+        }
+        synchronized (entries) {
+            if (probe.startedAt < prunedUpTo) {
+                return;
+            }
+            for (int noteId : noteIds) {
+                if (lastChanged.getOrDefault(noteId, -1L) > probe.startedAt) {
+                    return;
+                }
+            }
+            long id = nextId++;
+            entries.put(id, new Entry(id, probe.vector, probe.scope, answer, noteIds, System.currentTimeMillis()));
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onNoteChanged(NoteChangeEvent event) {
+        if (event.getType() == NoteChangeEvent.Type.INSERTED) {
+            return;
+        }
+        int noteId = event.getNoteId();
+        synchronized (entries) {
+            lastChanged.remove(noteId);
+            lastChanged.put(noteId, ++sequence);
+            Iterator<Long> oldest = lastChanged.values().iterator();
+            while (lastChanged.size() > MAX_TRACKED_CHANGES) {
+                prunedUpTo = oldest.next();
+                oldest.remove();
+            }
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                if (it.next().noteIds.contains(noteId)) {
+                    it.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("responseCache[size=%d/%d, hits=%d, misses=%d, invalidations=%d]",
+                size(), maxEntries, hits.get(), misses.get(), invalidations.get());
+    }
+
+    // A lookup's question embedding and outcome, kept so a miss can be cached under the same vector
+    static class Probe {
+        final float[] vector;
+        final Object scope;
+        final long startedAt;
+        final String answer;
+
+        Probe(float[] vector, Object scope, long startedAt, String answer) {
+            this.vector = vector;
+            this.scope = scope;
+            this.startedAt = startedAt;
+            this.answer = answer;
+        }
+    }
+
+    private static class Entry {
+        final long id;
+        final float[] vector;
+        final Object scope;
+        final String answer;
+        final Set<Integer> noteIds;
+        final long createdAt;
+
+        Entry(long id, float[] vector, Object scope, String answer, Set<Integer> noteIds, long createdAt) {
+            this.id = id;
+            this.vector = vector;
+            this.scope = scope;
+            this.answer = answer;
+            this.noteIds = noteIds;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Replays a cached answer as a single partial response followed by completion
+    private static class CachedTokenStream implements TokenStream {
+        private final String answer;
+        private final Runnable onStart;
+        private BiConsumer<PartialResponse, PartialResponseContext> partialHandler = (partial, context) -> { };
+        private Consumer<ChatResponse> completeHandler = response -> { };
+
+        CachedTokenStream(String answer, Runnable onStart) {
+            this.answer = answer;
+            this.onStart = onStart;
+        }
+
+        @Override
+        public TokenStream onPartialResponse(Consumer<String> handler) {
+            partialHandler = (partial, context) -> handler.accept(partial.text());
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialResponseWithContext(BiConsumer<PartialResponse, PartialResponseContext> handler) {
+            partialHandler = handler;
+            return this;
+        }
+
+        @Override
+        public TokenStream onRetrieved(Consumer<List<Content>> handler) {
+            return this;
+        }
+
+        @Override
+        public TokenStream onToolExecuted(Consumer<ToolExecution> handler) {
+            return this;
+        }
+
+        @Override
+        public TokenStream onCompleteResponse(Consumer<ChatResponse> handler) {
+            completeHandler = handler;
+            return this;
+        }
+
+        @Override
+        public TokenStream onError(Consumer<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public TokenStream ignoreErrors() {
+            return this;
+        }
+
+        @Override
+        public void start() {
+            onStart.run();
+            partialHandler.accept(new PartialResponse(answer), new PartialResponseContext(new StreamingHandle() {
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            }));
+            completeHandler.accept(ChatResponse.builder().aiMessage(AiMessage.from(answer)).build());
+        }
+    }
+
+    // Passes everything through to the real stream, noting the retrieved sources and caching the final answer
+    private class RecordingTokenStream implements TokenStream {
+        private final TokenStream delegate;
+        private final Probe probe;
+        private final List<Content> sources = new ArrayList<>();
+        private Consumer<List<Content>> retrievedHandler = contents -> { };
+        private Consumer<ChatResponse> completeHandler = response -> { };
+
+        RecordingTokenStream(TokenStream delegate, Probe probe) {
+            this.delegate = delegate;
+            this.probe = probe;
+        }
+
+        @Override
+        public TokenStream onPartialResponse(Consumer<String> handler) {
+            delegate.onPartialResponse(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialResponseWithContext(BiConsumer<PartialResponse, PartialResponseContext> handler) {
+            delegate.onPartialResponseWithContext(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onRetrieved(Consumer<List<Content>> handler) {
+            retrievedHandler = handler;
+            return this;
+        }
+
+        @Override
+        public TokenStream onToolExecuted(Consumer<ToolExecution> handler) {
+            delegate.onToolExecuted(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onCompleteResponse(Consumer<ChatResponse> handler) {
+            completeHandler = handler;
+            return this;
+        }
+
+        @Override
+        public TokenStream onError(Consumer<Throwable> handler) {
+            delegate.onError(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream ignoreErrors() {
+            delegate.ignoreErrors();
+            return this;
+        }
+
+        @Override
+        public void start() {
+            // Registered here so the sources are recorded whether or not the caller asked for them
+            delegate.onRetrieved(contents -> {
+                sources.addAll(contents);
+                retrievedHandler.accept(contents);
+            });
+            delegate.onCompleteResponse(response -> {
+                if (response.aiMessage() != null) {
+                    put(probe, response.aiMessage().text(), sources);
+                }
+                completeHandler.accept(response);
+            });
+            delegate.start();
+        }
+    }
+}
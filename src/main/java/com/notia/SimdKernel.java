@@ -0,0 +1,71 @@
+package com.notia;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorMath.Kernel} on the JDK Vector API. Only loaded by {@link VectorMath}
+ * when the jdk.incubator.vector module is present.
+ */
+class SimdKernel implements VectorMath.Kernel {
+
+    private final VectorSpecies<Float> floats;
+    // At least as many bytes as floats has lanes, and never below the smallest shape (64 bits): on 128-bit
+    // machines one byte load widens into two float vectors
+    private final VectorSpecies<Byte> bytes;
+    private final int parts;
+
+    SimdKernel() {
+        this(FloatVector.SPECIES_PREFERRED);
+    }
+
+    SimdKernel(VectorSpecies<Float> floats) {
+        this.floats = floats;
+        this.bytes = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, floats.length() * 8)));
+        this.parts = bytes.length() / floats.length();
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        FloatVector sum = FloatVector.zero(floats);
+        int i = 0;
+        int bound = floats.loopBound(length);
+        for (; i < bound; i += floats.length()) {
+            FloatVector va = FloatVector.fromArray(floats, a, i);
+            FloatVector vb = FloatVector.fromArray(floats, b, i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public float dot(float[] a, byte[] b, int length) {
+        FloatVector sum = FloatVector.zero(floats);
+        int i = 0;
+        int bound = bytes.loopBound(length);
+        for (; i < bound; i += bytes.length()) {
+            ByteVector vb = ByteVector.fromArray(bytes, b, i);
+            for (int part = 0; part < parts; part++) {
+                FloatVector va = FloatVector.fromArray(floats, a, i + part * floats.length());
+                sum = va.fma((FloatVector) vb.convertShape(VectorOperators.B2F, floats, part), sum);
+            }
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "simd-" + floats.length() + "x" + floats.elementSize();
+    }
+}
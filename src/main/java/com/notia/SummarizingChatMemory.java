@@ -0,0 +1,208 @@
+package com.notia;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.ChatModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Chat memory bounded by tokens rather than by message count. When the conversation
+ * grows past the budget, the oldest messages are folded into a running summary by a
+ * small, cheap model instead of being dropped, so a long conversation keeps its earlier
+ * facts without resending every turn.
+ *
+ * The notes injected into a question (see {@link TokenBudgetContentInjector}) are only
+ * kept for the latest question; earlier questions are remembered without them, since the
+ * answers already say what was used. The summary is appended to the system message.
+ *
+ * Summarizing runs in the background on one shared thread. Until a batch is summarized
+ * its messages are still sent as they are, so the model never sees a gap; if
+ * summarizing fails, that batch is dropped as a window memory would.
+ */
+public class SummarizingChatMemory implements ChatMemory {
+
+    static final String SUMMARY_HEADER = "\n\nSummary of the earlier conversation:\n";
+    // The latest exchange is never summarized
+    private static final int MIN_RECENT_MESSAGES = 2;
+
+    private static final String SUMMARY_PROMPT =
+        "Update the summary of a conversation between a user and an assistant that answers questions about the user's notes. " +
+        "Keep facts, names, numbers and decisions the user may refer back to; leave out pleasantries. " +
+        "Reply with the updated summary only, in at most 150 words." +
+        "\n\nCurrent summary:\n%s\n\nNew messages:\n%s";
+
+    private static final ExecutorService summarizer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notia-memory-summarizer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Object id;
+    private final ChatModel summaryModel;
+    private final TokenCountEstimator estimator;
+    private final int tokenBudget;
+
+    // All guarded by this
+    private SystemMessage systemMessage;
+    private String summary = "";
+    // Evicted from recent, waiting to be summarized; still sent until they are
+    private final List<ChatMessage> pending = new ArrayList<>();
+    private final List<ChatMessage> recent = new ArrayList<>();
+    private boolean summarizing = false;
+
+    public SummarizingChatMemory(Object id, ChatModel summaryModel, TokenCountEstimator estimator, int tokenBudget) {
+        this.id = id;
+        this.summaryModel = summaryModel;
+        this.estimator = estimator;
+        this.tokenBudget = tokenBudget;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage) {
+            systemMessage = (SystemMessage) message;
+            return;
+        }
+        if (message instanceof UserMessage) {
+            recent.replaceAll(TokenBudgetContentInjector::withoutContext);
+        }
+        recent.add(message);
+        evict();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(pending.size() + recent.size() + 1);
+        if (systemMessage != null || !summary.isEmpty()) {
+            String system = systemMessage != null ? systemMessage.text() : "";
+            messages.add(SystemMessage.from(summary.isEmpty() ? system : (system + SUMMARY_HEADER + summary).trim()));
+        }
+        messages.addAll(pending);
+        messages.addAll(recent);
+        return messages;
+    }
+
+    @Override
+    public synchronized void clear() {
+        systemMessage = null;
+        summary = "";
+        pending.clear();
+        recent.clear();
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * The conversation to persist: the summary as a leading system message, if there is
+     * one, then every message not summarized yet. The system prompt is not included.
+     */
+    public synchronized List<ChatMessage> snapshot() {
+        List<ChatMessage> messages = new ArrayList<>(pending.size() + recent.size() + 1);
+        if (!summary.isEmpty()) {
+            messages.add(SystemMessage.from(summary));
+        }
+        messages.addAll(pending);
+        messages.addAll(recent);
+        return messages;
+    }
+
+    // Replaces the conversation with one from snapshot()
+    public synchronized void restore(List<ChatMessage> messages) {
+        pending.clear();
+        recent.clear();
+        summary = "";
+        for (ChatMessage message : messages) {
+            if (message instanceof SystemMessage) {
+                summary = ((SystemMessage) message).text();
+            } else {
+                recent.add(message);
+            }
+        }
+        evict();
+    }
+
+    // Moves the oldest messages to pending while recent is over budget, then starts summarizing them
+    private void evict() {
+        int tokens = estimator.estimateTokenCountInMessages(recent);
+        while (tokens > tokenBudget && recent.size() > MIN_RECENT_MESSAGES) {
+            ChatMessage oldest = recent.remove(0);
+            pending.add(oldest);
+            tokens -= estimator.estimateTokenCountInMessage(oldest);
+            // Tool results can't be sent without the request they answer
+            while (recent.size() > MIN_RECENT_MESSAGES && recent.get(0) instanceof ToolExecutionResultMessage) {
+                ChatMessage result = recent.remove(0);
+                pending.add(result);
+                tokens -= estimator.estimateTokenCountInMessage(result);
+            }
+        }
+        summarizeLater();
+    }
+
+    private void summarizeLater() {
+        if (summarizing || pending.isEmpty()) {
+            return;
+        }
+        summarizing = true;
+        List<ChatMessage> batch = new ArrayList<>(pending);
+        String previous = summary;
+        summarizer.execute(() -> {
+            String updated = null;
+            try {
+                long start = System.currentTimeMillis();
+                updated = summaryModel.chat(String.format(SUMMARY_PROMPT, previous.isEmpty() ? "(none)" : previous,
+                        transcript(batch))).trim();
+                System.out.println("Summarized " + batch.size() + " chat messages in " +
+                        (System.currentTimeMillis() - start) + "ms");
+            } catch (Exception e) {
+                System.err.println("Warning: Failed to summarize chat memory, dropping " + batch.size() +
+                        " messages: " + e.getMessage());
+            }
+            synchronized (SummarizingChatMemory.this) {
+                // clear() may have run meanwhile; only remove what is still this batch
+                if (pending.size() >= batch.size() && pending.subList(0, batch.size()).equals(batch)) {
+                    pending.subList(0, batch.size()).clear();
+                    if (updated != null && !updated.isEmpty()) {
+                        summary = updated;
+                    }
+                }
+                summarizing = false;
+                summarizeLater();
+            }
+        });
+    }
+
+    private static String transcript(List<ChatMessage> messages) {
+        StringBuilder text = new StringBuilder();
+        for (ChatMessage message : messages) {
+            String role;
+            if (message instanceof UserMessage) {
+                role = "User";
+            } else if (message instanceof AiMessage) {
+                role = "Assistant";
+            } else {
+                continue;
+            }
+            String content = HeuristicTokenCountEstimator.textOf(message);
+            if (content != null && !content.isBlank()) {
+                text.append(role).append(": ").append(content.trim()).append("\n");
+            }
+        }
+        return text.toString();
+    }
+}
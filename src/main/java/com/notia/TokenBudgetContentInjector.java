@@ -0,0 +1,210 @@
+package com.notia;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Adds retrieved note chunks to the user's message within a token budget instead of
+ * pasting them whole.
+ *
+ * Chunks are taken in retrieval order. Each chunk's body is split into passages
+ * (paragraphs), and sentences or lines already included from an earlier chunk are
+ * dropped, which removes the overlap between neighbouring chunks of a note and any chunk
+ * retrieved twice. When a chunk doesn't fit in what is left of the budget, its passages
+ * with the most query terms are kept, in their original order. The chunk's header (note
+ * id, title, section) is always kept with its passages.
+ */
+public class TokenBudgetContentInjector implements ContentInjector {
+
+    // Separates the question from the injected context; SummarizingChatMemory strips everything after it
+    static final String CONTEXT_MARKER = "\n\nAnswer using the following information from my notes:\n";
+
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Don't start another chunk with less than this left; it would be a header and a fragment
+    private static final int MIN_USEFUL_TOKENS = 40;
+    // Shorter sentences and lines (closing braces, list markers, "Yes.") are never treated as duplicates
+    private static final int MIN_DEDUP_CHARS = 24;
+
+    private final TokenCountEstimator estimator;
+    private final int tokenBudget;
+
+    public TokenBudgetContentInjector(TokenCountEstimator estimator, int tokenBudget) {
+        this.estimator = estimator;
+        this.tokenBudget = tokenBudget;
+    }
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        if (contents.isEmpty() || !(chatMessage instanceof UserMessage) || !((UserMessage) chatMessage).hasSingleText()) {
+            return chatMessage;
+        }
+        String question = ((UserMessage) chatMessage).singleText();
+        Set<String> queryTerms = NoteSearchIndex.tokenize(question);
+
+        Set<String> seen = new HashSet<>();
+        StringBuilder context = new StringBuilder();
+        int remaining = tokenBudget;
+        int used = 0;
+        for (Content content : contents) {
+            if (remaining < MIN_USEFUL_TOKENS) {
+                break;
+            }
+            String text = content.textSegment().text();
+            int headerEnd = text.indexOf("\n\n");
+            String header = headerEnd < 0 ? "" : text.substring(0, headerEnd);
+            String body = headerEnd < 0 ? text : text.substring(headerEnd + 2);
+
+            List<Passage> passages = passages(body, seen, queryTerms);
+            if (passages.isEmpty()) {
+                continue;
+            }
+            int headerTokens = estimator.estimateTokenCountInText(header);
+            List<Passage> selected = select(passages, remaining - headerTokens);
+            if (selected.isEmpty()) {
+                continue;
+            }
+
+            StringBuilder block = new StringBuilder(header);
+            for (Passage passage : selected) {
+                if (block.length() > 0) {
+                    block.append("\n\n");
+                }
+                block.append(passage.text);
+                seen.addAll(passage.units);
+            }
+            if (context.length() > 0) {
+                context.append("\n\n---\n\n");
+            }
+            context.append(block);
+            remaining -= estimator.estimateTokenCountInText(block.toString());
+            used++;
+        }
+        if (context.length() == 0) {
+            return chatMessage;
+        }
+        System.out.println("Injected " + used + " of " + contents.size() + " retrieved chunks, about " +
+                (tokenBudget - remaining) + " of " + tokenBudget + " tokens");
+        return UserMessage.from(question + CONTEXT_MARKER + context);
+    }
+
+    /**
+     * The user's question without the context injected into it, or the message itself if
+     * it has none.
+     */
+    static ChatMessage withoutContext(ChatMessage message) {
+        if (message instanceof UserMessage && ((UserMessage) message).hasSingleText()) {
+            String text = ((UserMessage) message).singleText();
+            int marker = text.indexOf(CONTEXT_MARKER);
+            if (marker >= 0) {
+                return UserMessage.from(text.substring(0, marker));
+            }
+        }
+        return message;
+    }
+
+    // Paragraphs of the body with already-seen sentences (or lines, for multi-line blocks) removed
+    private List<Passage> passages(String body, Set<String> seen, Set<String> queryTerms) {
+        List<Passage> passages = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(body.trim())) {
+            boolean multiLine = paragraph.indexOf('\n') >= 0;
+            String[] units = multiLine ? paragraph.split("\\r?\\n") : SENTENCE_END.split(paragraph);
+            StringBuilder kept = new StringBuilder();
+            List<String> keys = new ArrayList<>();
+            for (String unit : units) {
+                String key = WHITESPACE.matcher(unit.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+                if (key.isEmpty()) {
+                    continue;
+                }
+                boolean dedup = key.length() >= MIN_DEDUP_CHARS;
+                if (dedup && (seen.contains(key) || keys.contains(key))) {
+                    continue;
+                }
+                if (kept.length() > 0) {
+                    kept.append(multiLine ? "\n" : " ");
+                }
+                kept.append(multiLine ? unit : unit.trim());
+                if (dedup) {
+                    keys.add(key);
+                }
+            }
+            if (kept.length() == 0) {
+                continue;
+            }
+            String text = kept.toString();
+            int score = 0;
+            for (Map.Entry<String, Integer> term : NoteSearchIndex.countTerms(text).entrySet()) {
+                if (queryTerms.contains(term.getKey())) {
+                    score += term.getValue();
+                }
+            }
+            passages.add(new Passage(passages.size(), text, keys, score, estimator.estimateTokenCountInText(text)));
+        }
+        return passages;
+    }
+
+    // All passages if they fit, else the best-scoring ones that do, in document order
+    private static List<Passage> select(List<Passage> passages, int budget) {
+        int total = 0;
+        for (Passage passage : passages) {
+            total += passage.tokens + 1;
+        }
+        if (total <= budget) {
+            return passages;
+        }
+        List<Passage> byScore = new ArrayList<>(passages);
+        byScore.sort(Comparator.comparingInt((Passage p) -> -p.score).thenComparingInt(p -> p.order));
+        List<Passage> selected = new ArrayList<>();
+        int left = budget;
+        for (Passage passage : byScore) {
+            if (passage.tokens + 1 <= left) {
+                selected.add(passage);
+                left -= passage.tokens + 1;
+            }
+        }
+        if (selected.isEmpty() && budget >= MIN_USEFUL_TOKENS) {
+            // Even the best passage is too long: keep its beginning
+            Passage best = byScore.get(0);
+            selected.add(best.truncated(budget));
+        }
+        selected.sort(Comparator.comparingInt(p -> p.order));
+        return selected;
+    }
+
+    private static class Passage {
+        final int order;
+        final String text;
+        final List<String> units;
+        final int score;
+        final int tokens;
+
+        Passage(int order, String text, List<String> units, int score, int tokens) {
+            this.order = order;
+            this.text = text;
+            this.units = units;
+            this.score = score;
+            this.tokens = tokens;
+        }
+
+        // Cut at a word boundary to about {@code budget} tokens (four characters each)
+        Passage truncated(int budget) {
+            int limit = Math.min(text.length(), budget * 4);
+            int cut = text.lastIndexOf(' ', limit);
+            String kept = text.substring(0, cut > 0 ? cut : limit) + " …";
+            return new Passage(order, kept, List.of(), score, budget);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.notia;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps the k highest-scoring ids seen so far in a binary min-heap over two primitive
+ * arrays, so scanning many candidates allocates nothing per candidate.
+ */
+public class TopK {
+
+    public interface Scorer {
+        float score(int id);
+    }
+
+    private static final int SCAN_SPLIT_THRESHOLD = 4096; // Ids per fork/join leaf
+
+    /**
+     * Scores every accepted id in [0, count) and returns the best {@code k}. Large ranges
+     * are split across the common fork/join pool, so the scorer must be thread-safe.
+     */
+    public static TopK scan(int count, int k, IntPredicate accept, Scorer scorer) {
+        if (count <= SCAN_SPLIT_THRESHOLD) {
+            return scanRange(k, accept, scorer, 0, count);
+        }
+        return ForkJoinPool.commonPool().invoke(new ScanTask(k, accept, scorer, 0, count));
+    }
+
+    private static TopK scanRange(int k, IntPredicate accept, Scorer scorer, int from, int to) {
+        TopK top = new TopK(k);
+        for (int id = from; id < to; id++) {
+            if (accept.test(id)) {
+                top.offer(id, scorer.score(id));
+            }
+        }
+        return top;
+    }
+
+    private static class ScanTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final int k;
+        private final IntPredicate accept;
+        private final Scorer scorer;
+        private final int from;
+        private final int to;
+
+        ScanTask(int k, IntPredicate accept, Scorer scorer, int from, int to) {
+            this.k = k;
+            this.accept = accept;
+            this.scorer = scorer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= SCAN_SPLIT_THRESHOLD) {
+                return scanRange(k, accept, scorer, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(k, accept, scorer, from, mid);
+            left.fork();
+            TopK right = new ScanTask(k, accept, scorer, mid, to).compute();
+            TopK merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    private final int k;
+    private final int[] ids;
+    private final float[] scores;
+    private int size = 0;
+
+    public TopK(int k) {
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The score a candidate has to beat once the heap is full
+    public float threshold() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public void offer(int id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Empties the heap into {@code outIds} and {@code outScores}, best first. Returns the count.
+     */
+    public int drainDescending(int[] outIds, float[] outScores) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            outIds[i] = ids[0];
+            outScores[i] = scores[0];
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            ids[i] = ids[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    private void siftDown(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+}
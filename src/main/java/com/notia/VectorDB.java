@@ -1,21 +1,74 @@
 package com.notia;
 
 import static dev.langchain4j.store.embedding.chroma.ChromaApiVersion.V2;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
 
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VectorDB implements AutoCloseable {
+    public static final String DEFAULT_CHROMA_URL = "http://[::1]:8000";
+    public static final String DEFAULT_COLLECTION = "notia-notes-collection";
+
+    // Metadata stored with every note chunk
+    public static final String METADATA_NOTE_ID = "note_id";
+    public static final String METADATA_CHUNK = "chunk";
+    public static final String METADATA_TITLE = "title";
+    public static final String METADATA_UPDATED_ON = "updated_on";
+    public static final String METADATA_TAGS = "tags";
+    public static final String METADATA_CATEGORIES = "categories";
+    // Metadata values can't be lists, so each tag and category also gets its own key set to 1 for exact filtering
+    private static final String TAG_KEY_PREFIX = "tag:";
+    private static final String CATEGORY_KEY_PREFIX = "category:";
+
+    // "chroma" (default) talks to a Chroma server, "local" keeps an HNSW index in-process
+    private static final String BACKEND = System.getenv().getOrDefault("NOTIA_VECTOR_BACKEND", "chroma");
+    private static final String LOCAL_INDEX_PATH = System.getenv().getOrDefault("NOTIA_VECTOR_INDEX_PATH",
+            Paths.get(System.getProperty("user.home"), ".notia", "notes.hnsw").toString());
+    private static final int HNSW_M = Integer.parseInt(System.getenv().getOrDefault("NOTIA_HNSW_M", "16"));
+    private static final int HNSW_EF_CONSTRUCTION = Integer.parseInt(System.getenv().getOrDefault("NOTIA_HNSW_EF_CONSTRUCTION", "200"));
+    private static final int HNSW_EF_SEARCH = Integer.parseInt(System.getenv().getOrDefault("NOTIA_HNSW_EF_SEARCH", "64"));
+    // "auto" (default), "exact" or "hnsw"; exact scans every vector, auto does so for small indexes
+    private static final String SEARCH_MODE = System.getenv().getOrDefault("NOTIA_VECTOR_SEARCH_MODE", "auto");
+    // "float32" (default) or "int8", a quarter of the size at a small loss of precision
+    private static final String VECTOR_ENCODING = System.getenv().getOrDefault("NOTIA_VECTOR_ENCODING", "float32");
+    // "none" (default), "int8" or "pq": compressed codes the exact scan shortlists on before re-ranking
+    private static final String VECTOR_QUANTIZATION = System.getenv().getOrDefault("NOTIA_VECTOR_QUANTIZATION", "none");
+    private static final int PQ_SUBSPACES = Integer.parseInt(System.getenv().getOrDefault("NOTIA_PQ_SUBSPACES", "48"));
+    // Bulk ingest: texts per embedding call and store write, and embedded batches that may wait for the writer
+    private static final int INGEST_BATCH_SIZE = Integer.parseInt(System.getenv().getOrDefault("NOTIA_INGEST_BATCH_SIZE", "64"));
+    private static final int INGEST_PIPELINE_DEPTH = Integer.parseInt(System.getenv().getOrDefault("NOTIA_INGEST_PIPELINE_DEPTH", "2"));
 
-public class VectorDB {
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final EmbeddingModel embeddingModel;
+    private final CachingEmbeddingModel queryEmbeddingModel;
+    private volatile EmbeddingCache embeddingCache;
+    // Bumped after every write, so cached search results can tell they may be stale
+    private final AtomicLong generation = new AtomicLong();
 
     public VectorDB(String chromaUrl, String collectionName) {
         this(chromaUrl, collectionName, false);
@@ -29,24 +82,136 @@ public class VectorDB {
             .logRequests(logRequests)
             .logResponses(logRequests)
             .build();
-        this.embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        this.embeddingModel = EmbeddingService.get();
+        this.queryEmbeddingModel = EmbeddingService.get().queryModel();
+    }
+
+    public VectorDB(EmbeddingStore<TextSegment> embeddingStore) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = EmbeddingService.get();
+        this.queryEmbeddingModel = EmbeddingService.get().queryModel();
+    }
+
+    /**
+     * Creates the VectorDB for the notes collection on the backend selected by NOTIA_VECTOR_BACKEND.
+     */
+    public static VectorDB fromEnvironment() {
+        if ("local".equalsIgnoreCase(BACKEND)) {
+            Path indexPath = Paths.get(LOCAL_INDEX_PATH);
+            System.out.println("Using local vector index at " + indexPath);
+            MappedVectorStorage.Encoding encoding = "int8".equalsIgnoreCase(VECTOR_ENCODING)
+                    ? MappedVectorStorage.Encoding.INT8 : MappedVectorStorage.Encoding.FLOAT32;
+            LocalEmbeddingStore.Quantization quantization = LocalEmbeddingStore.Quantization.NONE;
+            try {
+                quantization = LocalEmbeddingStore.Quantization.valueOf(VECTOR_QUANTIZATION.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: Unknown NOTIA_VECTOR_QUANTIZATION '" + VECTOR_QUANTIZATION + "', using none");
+            }
+            if (quantization != LocalEmbeddingStore.Quantization.NONE && encoding != MappedVectorStorage.Encoding.FLOAT32) {
+                System.err.println("Warning: Quantized candidates are re-ranked against int8 vectors; " +
+                        "use NOTIA_VECTOR_ENCODING=float32 for full-precision re-ranking");
+            }
+            LocalEmbeddingStore store = new LocalEmbeddingStore(indexPath, HNSW_M, HNSW_EF_CONSTRUCTION, HNSW_EF_SEARCH,
+                    encoding, quantization, PQ_SUBSPACES);
+            try {
+                store.setSearchMode(LocalEmbeddingStore.SearchMode.valueOf(SEARCH_MODE.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: Unknown NOTIA_VECTOR_SEARCH_MODE '" + SEARCH_MODE + "', using auto");
+            }
+            return new VectorDB(store);
+        }
+        if (!"chroma".equalsIgnoreCase(BACKEND)) {
+            System.err.println("Warning: Unknown NOTIA_VECTOR_BACKEND '" + BACKEND + "', using chroma");
+        }
+        return new VectorDB(DEFAULT_CHROMA_URL, DEFAULT_COLLECTION);
+    }
+
+    public EmbeddingStore<TextSegment> getEmbeddingStore() {
+        return embeddingStore;
+    }
+
+    public EmbeddingModel getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    // The model to embed search queries with; shares recent query embeddings with every other searcher (see EmbeddingService)
+    public CachingEmbeddingModel getQueryEmbeddingModel() {
+        return queryEmbeddingModel;
+    }
+
+    // True when the store started out empty, so nothing recorded as embedded is actually there
+    public boolean isNewIndex() {
+        return embeddingStore instanceof LocalEmbeddingStore
+                && !((LocalEmbeddingStore) embeddingStore).isLoadedFromDisk();
+    }
+
+    /**
+     * Makes the writes so far durable. The local index is otherwise saved a few seconds
+     * after a change; callers that record in MySQL what the store holds flush first, so a
+     * crash in between can't leave notes marked embedded whose vectors were never saved.
+     * Chroma persists every write itself.
+     */
+    public void flush() throws IOException {
+        if (embeddingStore instanceof LocalEmbeddingStore) {
+            ((LocalEmbeddingStore) embeddingStore).save();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (embeddingStore instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) embeddingStore).close();
+            } catch (Exception e) {
+                System.err.println("Warning: Failed to close vector store: " + e.getMessage());
+            }
+        }
+    }
+
+    // Lets addTextsWithIds reuse vectors for text that was embedded before
+    public void setEmbeddingCache(EmbeddingCache embeddingCache) {
+        this.embeddingCache = embeddingCache;
+    }
+
+    public EmbeddingCache getEmbeddingCache() {
+        return embeddingCache;
+    }
+
+    /**
+     * Changes whenever vectors are added or removed through this VectorDB (after the
+     * write, so a result read under the new value already reflects it).
+     */
+    public long getGeneration() {
+        return generation.get();
     }
 
     public void addText(String text) {
         TextSegment segment = TextSegment.from(text);
         Embedding embedding = embeddingModel.embed(segment).content();
-        embeddingStore.add(embedding, segment);
+        try {
+            embeddingStore.add(embedding, segment);
+        } finally {
+            generation.incrementAndGet();
+        }
     }
 
     public String addTextWithId(String text, String id) {
+        return addTextWithId(text, id, new Metadata());
+    }
+
+    public String addTextWithId(String text, String id, Metadata metadata) {
         if (text == null || text.trim().isEmpty()) {
             System.err.println("Warning: Cannot add null or empty text to vector database");
             return null;
         }
         try {
-            TextSegment segment = TextSegment.from(text);
+            TextSegment segment = TextSegment.from(text, metadata);
             Embedding embedding = embeddingModel.embed(segment).content();
-            embeddingStore.add(id, embedding);
+            try {
+                embeddingStore.addAll(List.of(id), List.of(embedding), List.of(segment));
+            } finally {
+                generation.incrementAndGet();
+            }
             return id;
         } catch (Exception e) {
             System.err.println("Error adding text to vector database: " + e.getMessage());
@@ -55,38 +220,295 @@ public class VectorDB {
         }
     }
 
-    public void addTexts(List<String> texts) {
+    public void addTextsWithIds(List<String> texts, List<String> ids) {
+        addTextsWithIds(texts, ids, null);
+    }
+
+    /**
+     * Embeds all texts in one model call and writes them, with their text and metadata
+     * (may be null), in one request, replacing any existing ids.
+     */
+    public void addTextsWithIds(List<String> texts, List<String> ids, List<Metadata> metadata) {
+        if (texts.size() != ids.size() || (metadata != null && metadata.size() != ids.size())) {
+            throw new IllegalArgumentException("Got " + texts.size() + " texts for " + ids.size() + " ids");
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        List<Embedding> embeddings = embedAll(texts);
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            segments.add(TextSegment.from(texts.get(i), metadata == null ? new Metadata() : metadata.get(i)));
+        }
+        // Chroma's add ignores ids that already exist, so drop the old vectors first (the local store upserts anyway)
+        try {
+            embeddingStore.removeAll(ids);
+            embeddingStore.addAll(ids, embeddings, segments);
+        } finally {
+            generation.incrementAndGet();
+        }
+    }
+
+    // Embeds the texts, taking whatever the cache has and running only the rest through the model
+    List<Embedding> embedAll(List<String> texts) {
+        EmbeddingCache cache = embeddingCache;
+        if (cache == null) {
+            return embeddingModel.embedAll(toSegments(texts)).content();
+        }
+        List<String> hashes = new ArrayList<>();
+        for (String text : texts) {
+            hashes.add(EmbeddingQueue.textHash(text));
+        }
+        Map<String, Embedding> cached = cache.getAll(new LinkedHashSet<>(hashes));
+
+        List<String> missingTexts = new ArrayList<>();
+        Set<String> missingHashes = new LinkedHashSet<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!cached.containsKey(hashes.get(i)) && missingHashes.add(hashes.get(i))) {
+                missingTexts.add(texts.get(i));
+            }
+        }
+        if (!missingTexts.isEmpty()) {
+            List<Embedding> computed = embeddingModel.embedAll(toSegments(missingTexts)).content();
+            Map<String, Embedding> fresh = new HashMap<>();
+            int i = 0;
+            for (String hash : missingHashes) {
+                fresh.put(hash, computed.get(i++));
+            }
+            cache.putAll(fresh);
+            cached.putAll(fresh);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>();
+        for (String hash : hashes) {
+            embeddings.add(cached.get(hash));
+        }
+        return embeddings;
+    }
+
+    private static List<TextSegment> toSegments(List<String> texts) {
+        List<TextSegment> segments = new ArrayList<>();
         for (String text : texts) {
-            addText(text);
+            segments.add(TextSegment.from(text));
         }
+        return segments;
     }
 
-    public void removeById(String embeddingId) {
+    public List<String> addTexts(List<String> texts) {
+        return addTexts(texts, null, null, null);
+    }
+
+    /**
+     * Bulk ingest: embeds the texts in micro-batches of {@code NOTIA_INGEST_BATCH_SIZE} and
+     * writes each batch with one {@code addAll}. Embedding runs on the calling thread while
+     * a writer thread stores the previous batches; at most {@code NOTIA_INGEST_PIPELINE_DEPTH}
+     * embedded batches wait for the writer, so a slow store holds embedding back instead of
+     * piling up vectors in memory.
+     *
+     * @param ids      ids to store under, replacing existing ones; null generates random ids
+     * @param metadata per-text metadata; may be null
+     * @param progress told after every written batch; may be null
+     * @return the ids of the stored texts, in order
+     */
+    public List<String> addTexts(List<String> texts, List<String> ids, List<Metadata> metadata, IngestProgress progress) {
+        if ((ids != null && ids.size() != texts.size()) || (metadata != null && metadata.size() != texts.size())) {
+            throw new IllegalArgumentException("Got " + texts.size() + " texts but a different number of ids or metadata");
+        }
+        List<String> storedIds = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            storedIds.add(ids != null ? ids.get(i) : UUID.randomUUID().toString());
+        }
+        if (texts.isEmpty()) {
+            return storedIds;
+        }
+
+        long start = System.currentTimeMillis();
+        BlockingQueue<IngestBatch> pending = new ArrayBlockingQueue<>(INGEST_PIPELINE_DEPTH);
+        AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            int written = 0;
+            try {
+                while (true) {
+                    IngestBatch batch = pending.take();
+                    if (batch == IngestBatch.END) {
+                        return;
+                    }
+                    try {
+                        if (ids != null) {
+                            // Chroma's add ignores ids that already exist (see addTextsWithIds)
+                            embeddingStore.removeAll(batch.ids);
+                        }
+                        embeddingStore.addAll(batch.ids, batch.embeddings, batch.segments);
+                    } finally {
+                        generation.incrementAndGet();
+                    }
+                    written += batch.ids.size();
+                    if (progress != null) {
+                        progress.batchWritten(written, texts.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                // Errors too: a writer that dies silently would have its batches reported as stored
+                writeFailure.set(e);
+            }
+        }, "notia-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        try {
+            for (int from = 0; from < texts.size(); from += INGEST_BATCH_SIZE) {
+                int to = Math.min(from + INGEST_BATCH_SIZE, texts.size());
+                List<Embedding> embeddings = embedAll(texts.subList(from, to));
+                List<TextSegment> segments = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    segments.add(TextSegment.from(texts.get(i), metadata == null ? new Metadata() : metadata.get(i)));
+                }
+                enqueue(pending, new IngestBatch(storedIds.subList(from, to), embeddings, segments), writer, writeFailure);
+            }
+            enqueue(pending, IngestBatch.END, writer, writeFailure);
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while adding texts", e);
+        } catch (RuntimeException e) {
+            writer.interrupt();
+            throw e;
+        }
+        throwIfFailed(writeFailure);
+        System.out.println("Added " + texts.size() + " texts to the vector database in " +
+                (System.currentTimeMillis() - start) + "ms");
+        return storedIds;
+    }
+
+    // Waits for room in the pipeline; fails if the writer has died, since the batch would never be written
+    private static void enqueue(BlockingQueue<IngestBatch> pending, IngestBatch batch, Thread writer,
+                                AtomicReference<Throwable> writeFailure) throws InterruptedException {
+        while (!pending.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                throwIfFailed(writeFailure);
+                throw new IllegalStateException("Ingest writer stopped before all batches were written");
+            }
+        }
+        throwIfFailed(writeFailure);
+    }
+
+    private static void throwIfFailed(AtomicReference<Throwable> writeFailure) {
+        Throwable failure = writeFailure.get();
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Failed to write batch", failure);
+        }
+    }
+
+    // Reports bulk ingest progress; called on the writer thread
+    public interface IngestProgress {
+        void batchWritten(int written, int total);
+    }
+
+    private static class IngestBatch {
+        static final IngestBatch END = new IngestBatch(List.of(), List.of(), List.of());
+
+        final List<String> ids;
+        final List<Embedding> embeddings;
+        final List<TextSegment> segments;
+
+        IngestBatch(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+            this.ids = ids;
+            this.embeddings = embeddings;
+            this.segments = segments;
+        }
+    }
+
+    public boolean removeById(String embeddingId) {
         try {
             embeddingStore.remove(embeddingId);
+            return true;
         } catch (Exception e) {
             System.err.println("Warning: Failed to remove embedding from vector database: " + e.getMessage());
+            return false;
+        } finally {
+            generation.incrementAndGet();
         }
     }
 
-    public void removeAll(List<String> embeddingIds) {
+    public boolean removeAll(List<String> embeddingIds) {
         try {
             embeddingStore.removeAll(embeddingIds);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Warning: Failed to remove embeddings from vector database: " + e.getMessage());
+            return false;
+        } finally {
+            generation.incrementAndGet();
+        }
+    }
+
+    // Removes every vector whose metadata matches, whatever its id
+    public boolean removeAll(Filter filter) {
+        try {
+            embeddingStore.removeAll(filter);
+            return true;
         } catch (Exception e) {
             System.err.println("Warning: Failed to remove embeddings from vector database: " + e.getMessage());
+            return false;
+        } finally {
+            generation.incrementAndGet();
         }
     }
 
     public List<EmbeddingMatch<TextSegment>> search(String query, int maxResults) {
-        Embedding queryEmbedding = embeddingModel.embed(query).content();
+        return search(query, maxResults, null);
+    }
+
+    /**
+     * Searches only vectors whose metadata matches {@code filter} (null for all). The filter
+     * runs in the store, so scoped searches still return up to {@code maxResults} matches.
+     */
+    public List<EmbeddingMatch<TextSegment>> search(String query, int maxResults, Filter filter) {
+        Embedding queryEmbedding = queryEmbeddingModel.embed(query).content();
         EmbeddingSearchRequest searchRequest = EmbeddingSearchRequest.builder()
             .queryEmbedding(queryEmbedding)
             .maxResults(maxResults)
+            .filter(filter)
             .build();
         EmbeddingSearchResult<TextSegment> result = embeddingStore.search(searchRequest);
         return result.matches();
     }
 
+    public static String tagKey(String tag) {
+        return TAG_KEY_PREFIX + tag;
+    }
+
+    public static String categoryKey(String category) {
+        return CATEGORY_KEY_PREFIX + category;
+    }
+
+    // Chunks of notes with the given tag
+    public static Filter tagFilter(String tag) {
+        return metadataKey(tagKey(tag)).isEqualTo(1);
+    }
+
+    public static Filter categoryFilter(String category) {
+        return metadataKey(categoryKey(category)).isEqualTo(1);
+    }
+
+    public static Filter noteFilter(int noteId) {
+        return metadataKey(METADATA_NOTE_ID).isEqualTo(noteId);
+    }
+
+    // Chunks of any of the given notes
+    public static Filter notesFilter(Collection<Integer> noteIds) {
+        return metadataKey(METADATA_NOTE_ID).isIn(noteIds);
+    }
+
     public EmbeddingMatch<TextSegment> searchTopMatch(String query) {
         List<EmbeddingMatch<TextSegment>> matches = search(query, 1);
         return matches.isEmpty() ? null : matches.get(0);
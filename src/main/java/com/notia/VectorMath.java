@@ -0,0 +1,99 @@
+package com.notia;
+
+/**
+ * Dot products for vector search, using the JDK Vector API (SIMD) when the
+ * jdk.incubator.vector module is available and plain loops otherwise.
+ *
+ * The module is incubating, so the app must be started with
+ * {@code --add-modules jdk.incubator.vector} to get the SIMD kernel (the pom does this);
+ * {@code -Dnotia.simd=false} forces the scalar one.
+ */
+public final class VectorMath {
+
+    interface Kernel {
+        float dot(float[] a, float[] b, int length);
+
+        // Dot product of a float vector with a vector of signed bytes
+        float dot(float[] a, byte[] b, int length);
+    }
+
+    private static final Kernel KERNEL = loadKernel();
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimd() {
+        return !(KERNEL instanceof ScalarKernel);
+    }
+
+    public static String kernelName() {
+        return KERNEL.toString();
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b, a.length);
+    }
+
+    public static float dot(float[] a, byte[] b) {
+        return KERNEL.dot(a, b, a.length);
+    }
+
+    private static Kernel loadKernel() {
+        if ("false".equalsIgnoreCase(System.getProperty("notia.simd"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernel();
+        }
+        try {
+            // Loaded by name so this class still works when the module isn't there
+            Kernel simd = (Kernel) Class.forName("com.notia.SimdKernel").getDeclaredConstructor().newInstance();
+            float[] probe = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17};
+            if (simd.dot(probe, probe, probe.length) != new ScalarKernel().dot(probe, probe, probe.length)) {
+                throw new IllegalStateException("SIMD kernel disagrees with scalar kernel");
+            }
+            return simd;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            System.err.println("Warning: SIMD vector search unavailable, using scalar code: " + e);
+            return new ScalarKernel();
+        }
+    }
+
+    static class ScalarKernel implements Kernel {
+        @Override
+        public float dot(float[] a, float[] b, int length) {
+            // Independent accumulators let the JIT overlap the multiply-adds
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for (; i + 3 < length; i += 4) {
+                s0 += a[i] * b[i];
+                s1 += a[i + 1] * b[i + 1];
+                s2 += a[i + 2] * b[i + 2];
+                s3 += a[i + 3] * b[i + 3];
+            }
+            for (; i < length; i++) {
+                s0 += a[i] * b[i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        @Override
+        public float dot(float[] a, byte[] b, int length) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for (; i + 3 < length; i += 4) {
+                s0 += a[i] * b[i];
+                s1 += a[i + 1] * b[i + 1];
+                s2 += a[i + 2] * b[i + 2];
+                s3 += a[i + 3] * b[i + 3];
+            }
+            for (; i < length; i++) {
+                s0 += a[i] * b[i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    }
+}
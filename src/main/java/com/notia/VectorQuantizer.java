@@ -0,0 +1,37 @@
+package com.notia;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Lossy compression of vectors into fixed-size byte codes that can be scored against a
+ * full-precision query without decoding them. Used to shortlist candidates cheaply before
+ * re-ranking them with the original vectors.
+ */
+public interface VectorQuantizer {
+
+    // Scores codes against one query; built once per query so per-query setup is amortized
+    interface QueryScorer {
+        float score(byte[] codes, int offset);
+    }
+
+    int dimension();
+
+    int codeBytes();
+
+    void encode(float[] vector, byte[] codes, int offset);
+
+    QueryScorer scorer(float[] query);
+
+    void write(DataOutput out) throws IOException;
+
+    static VectorQuantizer read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ScalarQuantizer.TYPE: return ScalarQuantizer.readBody(in);
+            case ProductQuantizer.TYPE: return ProductQuantizer.readBody(in);
+            default: throw new IOException("Unknown quantizer type " + type);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.notia;
+
+import static dev.langchain4j.store.embedding.chroma.ChromaApiVersion.V2;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Compares the vector search paths on synthetic MiniLM-sized vectors: the dot product
+ * kernels, the exact scan and the HNSW walk of {@link LocalEmbeddingStore}, and
+ * optionally a Chroma server. Recall is measured against the exact scan.
+ *
+ * Run with:
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.notia.VectorSearchBenchmark -Dexec.args="50000 200 --chroma"
+ * </pre>
+ * (arguments: number of vectors, number of queries, and --chroma to include a Chroma
+ * server at {@link VectorDB#DEFAULT_CHROMA_URL}). exec:java runs in the Maven JVM, so set
+ * {@code MAVEN_OPTS="--add-modules jdk.incubator.vector"} to benchmark the SIMD kernel.
+ */
+public class VectorSearchBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int CLUSTERS = 200;
+    private static final int TOP_K = 10;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int vectors = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        boolean chroma = Arrays.asList(args).contains("--chroma");
+
+        System.out.println("Vectors: " + vectors + ", queries: " + queries + ", dimension: " + DIMENSION +
+                ", kernel: " + VectorMath.kernelName() + ", cores: " + Runtime.getRuntime().availableProcessors());
+        Random random = new Random(7);
+        float[][] data = clusteredVectors(vectors, random);
+        float[][] queryVectors = new float[queries][];
+        for (int i = 0; i < queries; i++) {
+            queryVectors[i] = perturb(data[random.nextInt(vectors)], 0.05f, random);
+        }
+
+        benchmarkKernels(data);
+
+        Path dir = Files.createTempDirectory("notia-bench");
+        LocalEmbeddingStore store = new LocalEmbeddingStore(dir.resolve("bench.hnsw"), 16, 200, 64,
+                MappedVectorStorage.Encoding.FLOAT32);
+        try {
+            List<String> ids = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < vectors; i++) {
+                ids.add("v" + i);
+                embeddings.add(Embedding.from(data[i]));
+            }
+            long start = System.nanoTime();
+            store.addAll(ids, embeddings, null);
+            System.out.printf("Local index build: %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+            store.setSearchMode(LocalEmbeddingStore.SearchMode.EXACT);
+            List<Set<String>> truth = run("Local exact scan", store, queryVectors, null);
+            store.setSearchMode(LocalEmbeddingStore.SearchMode.HNSW);
+            for (int ef : new int[]{32, 64, 128}) {
+                store.setEfSearch(ef);
+                run("Local HNSW ef=" + ef, store, queryVectors, truth);
+            }
+
+            if (chroma) {
+                benchmarkChroma(ids, embeddings, queryVectors, truth);
+            }
+        } finally {
+            store.close();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Raw dot-product throughput of the SIMD (if loaded) and scalar kernels over a packed matrix
+    private static void benchmarkKernels(float[][] data) {
+        float[] packed = new float[data.length * DIMENSION];
+        for (int i = 0; i < data.length; i++) {
+            System.arraycopy(data[i], 0, packed, i * DIMENSION, DIMENSION);
+        }
+        float[] query = data[0];
+        float[] row = new float[DIMENSION];
+        VectorMath.Kernel scalar = new VectorMath.ScalarKernel();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            float sink = 0;
+            for (int i = 0; i < data.length; i++) {
+                System.arraycopy(packed, i * DIMENSION, row, 0, DIMENSION);
+                sink += VectorMath.dot(query, row);
+            }
+            long current = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < data.length; i++) {
+                System.arraycopy(packed, i * DIMENSION, row, 0, DIMENSION);
+                sink += scalar.dot(query, row, DIMENSION);
+            }
+            long scalarNanos = System.nanoTime() - start;
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("Dot product: %s %.1f ns/vector, scalar %.1f ns/vector (checksum %.1f)%n",
+                        VectorMath.kernelName(), (double) current / data.length, (double) scalarNanos / data.length, sink);
+            }
+        }
+    }
+
+    private static List<Set<String>> run(String name, EmbeddingStore<TextSegment> store, float[][] queries,
+                                         List<Set<String>> truth) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (float[] query : queries) {
+                search(store, query);
+            }
+        }
+        long[] nanos = new long[queries.length];
+        List<Set<String>> results = new ArrayList<>();
+        int hits = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long start = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = search(store, queries[i]);
+            nanos[i] = System.nanoTime() - start;
+            Set<String> found = new HashSet<>();
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                found.add(match.embeddingId());
+            }
+            results.add(found);
+            if (truth != null) {
+                for (String id : found) {
+                    if (truth.get(i).contains(id)) {
+                        hits++;
+                    }
+                }
+            }
+        }
+        Arrays.sort(nanos);
+        String recall = truth == null ? "exact" : String.format("recall@%d %.3f", TOP_K, hits / (double) (TOP_K * queries.length));
+        System.out.printf("%-22s mean %7.3f ms  p50 %7.3f ms  p99 %7.3f ms  %s%n", name,
+                Arrays.stream(nanos).average().orElse(0) / 1e6, nanos[nanos.length / 2] / 1e6,
+                nanos[(int) (nanos.length * 0.99)] / 1e6, recall);
+        return results;
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> store, float[] query) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(TOP_K)
+                .build()).matches();
+    }
+
+    private static void benchmarkChroma(List<String> ids, List<Embedding> embeddings, float[][] queries,
+                                        List<Set<String>> truth) {
+        EmbeddingStore<TextSegment> chroma;
+        try {
+            chroma = ChromaEmbeddingStore.builder()
+                    .apiVersion(V2)
+                    .baseUrl(VectorDB.DEFAULT_CHROMA_URL)
+                    .collectionName("notia-benchmark-" + System.currentTimeMillis())
+                    .build();
+        } catch (Exception e) {
+            System.err.println("Skipping Chroma, server not reachable: " + e.getMessage());
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            for (int from = 0; from < ids.size(); from += 1000) {
+                int to = Math.min(from + 1000, ids.size());
+                chroma.addAll(ids.subList(from, to), embeddings.subList(from, to), null);
+            }
+            System.out.printf("Chroma load: %.1f s%n", (System.nanoTime() - start) / 1e9);
+            run("Chroma (HTTP)", chroma, queries, truth);
+        } finally {
+            chroma.removeAll();
+        }
+    }
+
+    private static float[][] clusteredVectors(int count, Random random) {
+        float[][] centers = new float[CLUSTERS][DIMENSION];
+        for (float[] center : centers) {
+            for (int i = 0; i < DIMENSION; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] data = new float[count][];
+        for (int i = 0; i < count; i++) {
+            data[i] = perturb(LocalEmbeddingStore.normalize(centers[i % CLUSTERS]), 0.05f, random);
+        }
+        return data;
+    }
+
+    private static float[] perturb(float[] vector, float noise, Random random) {
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] + noise * (float) random.nextGaussian();
+        }
+        return LocalEmbeddingStore.normalize(result);
+    }
+}
@@ -0,0 +1,7 @@
+package shared;
+
+import dev.langchain4j.service.TokenStream;
+
+public interface StreamingAssistant {
+    TokenStream chat(String userMessage);
+}